@@ -1,8 +1,11 @@
 package com.codedulan.dms.config;
 
+import com.codedulan.dms.dto.AuthenticatedUser;
 import com.codedulan.dms.service.JWTUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 @Component
 public class AccessControl {
@@ -11,17 +14,40 @@ public class AccessControl {
     private JWTUtils jwtUtils;
 
     public boolean isPatient(String authHeader) {
-        String token = authHeader.substring(7);
-        return "PATIENT".equals(jwtUtils.extractRole(token));
+        return "PATIENT".equals(roleOf(authHeader));
     }
 
     public boolean isDoctor(String authHeader) {
-        String token = authHeader.substring(7);
-        return "ROLE_DOCTOR".equals(jwtUtils.extractRole(token));
+        return "ROLE_DOCTOR".equals(roleOf(authHeader));
     }
 
     public boolean isDispenser(String authHeader) {
+        return "ROLE_DISPENSER".equals(roleOf(authHeader));
+    }
+
+    // for routes that take no Authorization header, such as the queue stream; JWTAuthFilter resolved the caller
+    public boolean isQueueViewer() {
+        AuthenticatedUser user = currentUser();
+        return user != null && ("PATIENT".equals(user.getRole())
+                || "ROLE_DOCTOR".equals(user.getRole()) || "ROLE_DISPENSER".equals(user.getRole()));
+    }
+
+    private AuthenticatedUser currentUser() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        Object user = attributes.getAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        return user instanceof AuthenticatedUser ? (AuthenticatedUser) user : null;
+    }
+
+    // use the role JWTAuthFilter already resolved for this request, parsing the header only as a fallback
+    private String roleOf(String authHeader) {
+        AuthenticatedUser user = currentUser();
+        if (user != null) {
+            return user.getRole();
+        }
         String token = authHeader.substring(7);
-        return "ROLE_DISPENSER".equals(jwtUtils.extractRole(token));
+        return jwtUtils.extractRole(token);
     }
-}
\ No newline at end of file
+}
@@ -16,7 +16,8 @@ public class CorsConfig {
             public void addCorsMappings(CorsRegistry registry) {
                 registry.addMapping("/**")
                         .allowedMethods("GET", "POST", "PUT", "DELETE")
-                        .allowedHeaders("Authorization", "Content-Type", "X-Requested-With")
+                        .allowedHeaders("Authorization", "Content-Type", "X-Requested-With", "Idempotency-Key")
+                        .exposedHeaders("X-Next-Cursor")
                         .allowedOrigins("*");
             }
         };
@@ -3,9 +3,13 @@ package com.codedulan.dms.config;
 
 
 
+import com.codedulan.dms.dto.AuthenticatedUser;
+import com.codedulan.dms.entity.Patient;
 import com.codedulan.dms.repository.PatientRepository;
 import com.codedulan.dms.service.JWTUtils;
 import com.codedulan.dms.service.OurUserDetailsService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -25,12 +29,17 @@ import java.util.List;
 @Component
 public class JWTAuthFilter extends OncePerRequestFilter {
 
+    private static final String QUEUE_STREAM_PATH = "/api/appointments/daily-queue/stream";
+
     @Autowired
     private JWTUtils jwtUtils;
 
     @Autowired
     private OurUserDetailsService ourUserDetailsService;
 
+    @Autowired
+    private PatientRepository patientRepository;
+
 
 
     @Override
@@ -51,16 +60,27 @@ public class JWTAuthFilter extends OncePerRequestFilter {
         final String userEmail;
 
         if (authHeader == null || authHeader.isBlank()){
+            if (QUEUE_STREAM_PATH.equals(request.getRequestURI())) {
+                authenticateQueueStream(request);
+            }
             filterChain.doFilter(request, response);
             return;
         }
 
         jwtToken = authHeader.substring(7);
-        userEmail = jwtUtils.extractUsername(jwtToken);
+        // parse and verify the token once; everything below reads from these claims
+        final Claims claims = jwtUtils.extractAllClaims(jwtToken);
+        userEmail = claims.getSubject();
+
+        // stream tokens are only good for the stream route, never as a bearer token
+        if (jwtUtils.extractPurpose(claims) != null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
 
         if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null){
 
-            String role = jwtUtils.extractRole(jwtToken);
+            String role = jwtUtils.extractRole(claims);
 
             if ("PATIENT".equals(role)) {
 
@@ -71,10 +91,13 @@ public class JWTAuthFilter extends OncePerRequestFilter {
                 SecurityContext context = SecurityContextHolder.createEmptyContext();
                 context.setAuthentication(token);
                 SecurityContextHolder.setContext(context);
+
+                request.setAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE,
+                        new AuthenticatedUser(jwtUtils.extractEmail(claims), role, resolvePatientId(claims)));
             } else {
 
                 UserDetails userDetails = ourUserDetailsService.loadUserByUsername(userEmail);
-                if (jwtUtils.isTokenValid(jwtToken, userDetails)) {
+                if (jwtUtils.isTokenValid(claims, userDetails)) {
                     UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(
                             userDetails, null, userDetails.getAuthorities()
                     );
@@ -82,6 +105,9 @@ public class JWTAuthFilter extends OncePerRequestFilter {
                     SecurityContext context = SecurityContextHolder.createEmptyContext();
                     context.setAuthentication(token);
                     SecurityContextHolder.setContext(context);
+
+                    request.setAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE,
+                            new AuthenticatedUser(userEmail, role, null));
                 }
             }
 
@@ -92,4 +118,45 @@ public class JWTAuthFilter extends OncePerRequestFilter {
 
 
     }
+
+    // EventSource cannot send headers, so the queue stream takes a short-lived token in the query string
+    private void authenticateQueueStream(HttpServletRequest request) {
+        String streamToken = request.getParameter("token");
+        if (streamToken == null || streamToken.isBlank()) {
+            return;
+        }
+        Claims claims;
+        try {
+            claims = jwtUtils.extractAllClaims(streamToken);
+        } catch (JwtException | IllegalArgumentException e) {
+            return;
+        }
+        if (!JWTUtils.QUEUE_STREAM_PURPOSE.equals(jwtUtils.extractPurpose(claims))) {
+            return;
+        }
+
+        String role = jwtUtils.extractRole(claims);
+        String authority = role.startsWith("ROLE_") ? role.substring("ROLE_".length()) : role;
+        UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(
+                claims.getSubject(), null, List.of(() -> authority)
+        );
+        token.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(token);
+        SecurityContextHolder.setContext(context);
+
+        request.setAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE,
+                new AuthenticatedUser(jwtUtils.extractEmail(claims), role, jwtUtils.extractPatientId(claims)));
+    }
+
+    // tokens issued before the patientId claim existed fall back to a single lookup by email
+    private Long resolvePatientId(Claims claims) {
+        Long patientId = jwtUtils.extractPatientId(claims);
+        if (patientId != null) {
+            return patientId;
+        }
+        return patientRepository.findByEmail(jwtUtils.extractEmail(claims))
+                .map(Patient::getPatientId)
+                .orElse(null);
+    }
 }
@@ -1,52 +1,72 @@
 package com.codedulan.dms.controller;
 
+import com.codedulan.dms.dto.AppointmentDTO;
+import com.codedulan.dms.dto.AppointmentPage;
+import com.codedulan.dms.dto.AuthenticatedUser;
 import com.codedulan.dms.dto.AppointmentRequest;
 import com.codedulan.dms.dto.AppointmentStatusRequest;
+import com.codedulan.dms.dto.BulkCancelRequest;
+import com.codedulan.dms.dto.DayAvailabilityDTO;
+import com.codedulan.dms.dto.StreamTokenDTO;
 import com.codedulan.dms.entity.Appointment;
+import com.codedulan.dms.service.AppointmentQueueStream;
 import com.codedulan.dms.service.AppointmentService;
+import com.codedulan.dms.service.JWTUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.validation.Valid;
+
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.YearMonth;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/appointments")
 public class AppointmentController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     @Autowired
     private AppointmentService appointmentService;
 
+    @Autowired
+    private AppointmentQueueStream appointmentQueueStream;
+
+    @Autowired
+    private JWTUtils jwtUtils;
+
     @PreAuthorize("@accessControl.isPatient(#authHeader)")
     @PostMapping
     public ResponseEntity<Appointment> createAppointment(
             @RequestBody AppointmentRequest request,
-            @RequestHeader("Authorization") String authHeader) {
+            @RequestHeader("Authorization") String authHeader,
+            @RequestAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE) AuthenticatedUser user) {
 
-        String token = authHeader.substring(7);
-        return ResponseEntity.ok(appointmentService.createAppointmentFromToken(request, token));
+        return ResponseEntity.ok(appointmentService.createAppointmentForCurrentPatient(request, user));
     }
 
     @PreAuthorize("@accessControl.isPatient(#authHeader)")
     @GetMapping
-    public ResponseEntity<List<Appointment>> getAppointments(
+    public ResponseEntity<List<AppointmentDTO>> getAppointments(
             @RequestParam(required = false) LocalDate date,
             @RequestParam(required = false) LocalDate startDate,
             @RequestParam(required = false) LocalDate endDate,
-            @RequestHeader("Authorization") String authHeader) {
-
-        String token = authHeader.substring(7);
-
+            @RequestHeader("Authorization") String authHeader,
+            @RequestAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE) AuthenticatedUser user) {
 
         if (date != null) {
-            return ResponseEntity.ok(appointmentService.getPatientAppointments(date, token));
+            return ResponseEntity.ok(appointmentService.getPatientAppointments(date, user));
         }
 
 
-        return ResponseEntity.ok(appointmentService.getPatientAppointmentsInRange(startDate, endDate, token));
+        return ResponseEntity.ok(appointmentService.getPatientAppointmentsInRange(startDate, endDate, user));
     }
 
     @PreAuthorize("@accessControl.isPatient(#authHeader)")
@@ -54,41 +74,51 @@ public class AppointmentController {
     public ResponseEntity<Appointment> updateAppointment(
             @PathVariable Long id,
             @RequestBody AppointmentRequest request,
-            @RequestHeader("Authorization") String authHeader) {
+            @RequestHeader("Authorization") String authHeader,
+            @RequestAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE) AuthenticatedUser user) {
 
-        String token = authHeader.substring(7);
-        return ResponseEntity.ok(appointmentService.updatePatientAppointment(id, request, token));
+        return ResponseEntity.ok(appointmentService.updatePatientAppointment(id, request, user));
     }
 
     @PreAuthorize("@accessControl.isPatient(#authHeader)")
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteAppointment(
             @PathVariable Long id,
-            @RequestHeader("Authorization") String authHeader) {
+            @RequestHeader("Authorization") String authHeader,
+            @RequestAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE) AuthenticatedUser user) {
 
-        String token = authHeader.substring(7);
-        appointmentService.deletePatientAppointment(id, token);
+        appointmentService.deletePatientAppointment(id, user);
         return ResponseEntity.noContent().build();
     }
 
     @PreAuthorize("@accessControl.isDispenser(#authHeader) or @accessControl.isDoctor(#authHeader)")
     @GetMapping("/all")
-    public ResponseEntity<List<Appointment>> getAllAppointments(
+    public ResponseEntity<List<AppointmentDTO>> getAllAppointments(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) Long patientId,
             @RequestHeader("Authorization") String authHeader) {
 
-        return ResponseEntity.ok(appointmentService.getAllAppointments());
+        // the body stays a plain array; the cursor for the next page travels in a header
+        AppointmentPage page = appointmentService.getAllAppointments(cursor, size, status, type, patientId);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
     }
 
     @PreAuthorize("@accessControl.isPatient(#authHeader)")
     @GetMapping("/my-appointments")
-    public ResponseEntity<List<Appointment>> getMyAppointments(
+    public ResponseEntity<List<AppointmentDTO>> getMyAppointments(
             @RequestParam(required = false) LocalDate startDate,
             @RequestParam(required = false) LocalDate endDate,
-            @RequestHeader("Authorization") String authHeader) {
+            @RequestHeader("Authorization") String authHeader,
+            @RequestAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE) AuthenticatedUser user) {
 
-        String token = authHeader.substring(7);
-
-        return ResponseEntity.ok(appointmentService.getPatientAppointmentsByTime(startDate, endDate, token));
+        return ResponseEntity.ok(appointmentService.getPatientAppointmentsByTime(startDate, endDate, user));
     }
 
     // endpoint to get available time slots
@@ -101,16 +131,47 @@ public class AppointmentController {
         return ResponseEntity.ok(appointmentService.getAvailableTimeSlots(date));
     }
 
+    // endpoint to get booked/free slot counts per day for a month, e.g. ?month=2025-03
+    @PreAuthorize("@accessControl.isPatient(#authHeader) or @accessControl.isDispenser(#authHeader)")
+    @GetMapping("/availability")
+    public ResponseEntity<List<DayAvailabilityDTO>> getMonthAvailability(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM") YearMonth month,
+            @RequestHeader("Authorization") String authHeader) {
+
+        return ResponseEntity.ok(appointmentService.getMonthAvailability(month));
+    }
+
     // endpoint to get daily queue
     @PreAuthorize("@accessControl.isPatient(#authHeader) or @accessControl.isDispenser(#authHeader) or @accessControl.isDoctor(#authHeader)")
     @GetMapping("/daily-queue")
-    public ResponseEntity<List<Appointment>> getDailyQueue(
+    public ResponseEntity<List<AppointmentDTO>> getDailyQueue(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
             @RequestHeader("Authorization") String authHeader) {
 
         return ResponseEntity.ok(appointmentService.getAppointmentsByDate(date));
     }
 
+    // one-minute token for opening the queue stream, since EventSource cannot send the Authorization header
+    @PreAuthorize("@accessControl.isPatient(#authHeader) or @accessControl.isDispenser(#authHeader) or @accessControl.isDoctor(#authHeader)")
+    @PostMapping("/daily-queue/stream-token")
+    public ResponseEntity<StreamTokenDTO> createQueueStreamToken(
+            @RequestHeader("Authorization") String authHeader,
+            @RequestAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE) AuthenticatedUser user) {
+
+        return ResponseEntity.ok(new StreamTokenDTO(jwtUtils.generateQueueStreamToken(user),
+                JWTUtils.STREAM_TOKEN_EXPIRATION_TIME / 1000));
+    }
+
+    // live updates for the daily queue; load /daily-queue once, then apply the pushed deltas.
+    // Authenticated by ?token= from /daily-queue/stream-token rather than the Authorization header.
+    @PreAuthorize("@accessControl.isQueueViewer()")
+    @GetMapping(value = "/daily-queue/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamDailyQueue(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+
+        return appointmentQueueStream.subscribe(date);
+    }
+
     // endpoint for dispenser to create appointment for a patient
     @PreAuthorize("@accessControl.isDispenser(#authHeader) or @accessControl.isDoctor(#authHeader)")
     @PostMapping("/create-for-patient/{patientId}")
@@ -136,11 +197,21 @@ public class AppointmentController {
     // New endpoint to cancel all appointments for a specific date
     @PreAuthorize("@accessControl.isDispenser(#authHeader) or @accessControl.isDoctor(#authHeader)")
     @PutMapping("/cancel-all-by-date/{date}")
-    public ResponseEntity<Void> cancelAllAppointmentsByDate(
+    public ResponseEntity<List<Long>> cancelAllAppointmentsByDate(
             @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
             @RequestHeader("Authorization") String authHeader) {
 
-        appointmentService.cancelAllAppointmentsByDate(date);
-        return ResponseEntity.noContent().build();
+        return ResponseEntity.ok(appointmentService.cancelAllAppointmentsByDate(date));
+    }
+
+    // endpoint to cancel every appointment in a date range, optionally only some types
+    @PreAuthorize("@accessControl.isDispenser(#authHeader) or @accessControl.isDoctor(#authHeader)")
+    @PutMapping("/cancel-range")
+    public ResponseEntity<List<Long>> cancelAppointmentsInRange(
+            @Valid @RequestBody BulkCancelRequest request,
+            @RequestHeader("Authorization") String authHeader) {
+
+        return ResponseEntity.ok(appointmentService.cancelAppointmentsInRange(
+                request.getStartDate(), request.getEndDate(), request.getAppointmentTypes()));
     }
-}
\ No newline at end of file
+}
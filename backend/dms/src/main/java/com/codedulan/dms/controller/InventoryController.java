@@ -1,17 +1,28 @@
 package com.codedulan.dms.controller;
 
 import com.codedulan.dms.dto.CreateInventoryItemDTO;
+import com.codedulan.dms.dto.InventoryImportResultDTO;
 import com.codedulan.dms.dto.InventoryItemDTO;
+import com.codedulan.dms.dto.ReorderForecastDTO;
+import com.codedulan.dms.dto.StockBalanceDTO;
+import com.codedulan.dms.dto.StockLevelDTO;
+import com.codedulan.dms.dto.StockMovementDTO;
 import com.codedulan.dms.dto.UpdateInventoryItemDTO;
+import com.codedulan.dms.service.InventoryImportService;
 import com.codedulan.dms.service.InventoryService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -21,6 +32,7 @@ import java.util.List;
 public class InventoryController {
 
     private final InventoryService inventoryService;
+    private final InventoryImportService inventoryImportService;
 
     @GetMapping
     public ResponseEntity<List<InventoryItemDTO>> getAllInventoryItems() {
@@ -40,6 +52,22 @@ public class InventoryController {
         return ResponseEntity.ok(inventoryService.getInventoryItemsByMedicine(medicineId));
     }
 
+    // Ledger of every stock change to the batch, oldest first
+    @GetMapping("/{id}/movements")
+    public ResponseEntity<List<StockMovementDTO>> getStockMovements(@PathVariable Long id) {
+        log.info("Fetching stock movements for inventory item with id: {}", id);
+        return ResponseEntity.ok(inventoryService.getStockMovements(id));
+    }
+
+    // Ledger balance of a medicine at a past instant, now when omitted
+    @GetMapping("/medicine/{medicineId}/balance")
+    public ResponseEntity<StockBalanceDTO> getStockBalance(
+            @PathVariable Long medicineId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at) {
+        log.info("Fetching stock balance for medicine with id: {} at {}", medicineId, at);
+        return ResponseEntity.ok(inventoryService.getStockBalance(medicineId, at));
+    }
+
     @GetMapping("/available")
     public ResponseEntity<List<InventoryItemDTO>> getAvailableInventoryItems() {
         log.info("Fetching available inventory items");
@@ -59,6 +87,40 @@ public class InventoryController {
         return ResponseEntity.ok(inventoryService.getLowStockItems());
     }
 
+    // Available, reserved and expiring units per medicine, served from memory
+    @GetMapping("/stock-levels")
+    public ResponseEntity<List<StockLevelDTO>> getStockLevels() {
+        log.info("Fetching stock levels for all medicines");
+        return ResponseEntity.ok(inventoryService.getStockLevels());
+    }
+
+    @GetMapping("/stock-levels/{medicineId}")
+    public ResponseEntity<StockLevelDTO> getStockLevel(@PathVariable Long medicineId) {
+        log.info("Fetching stock level for medicine with id: {}", medicineId);
+        return ResponseEntity.ok(inventoryService.getStockLevel(medicineId));
+    }
+
+    // Days of cover and reorder dates for the whole formulary, soonest reorder first
+    @GetMapping("/forecast")
+    public ResponseEntity<List<ReorderForecastDTO>> getReorderForecasts() {
+        log.info("Fetching reorder forecasts for all medicines");
+        return ResponseEntity.ok(inventoryService.getReorderForecasts());
+    }
+
+    @GetMapping("/forecast/{medicineId}")
+    public ResponseEntity<ReorderForecastDTO> getReorderForecast(@PathVariable Long medicineId) {
+        log.info("Fetching reorder forecast for medicine with id: {}", medicineId);
+        return ResponseEntity.ok(inventoryService.getReorderForecast(medicineId));
+    }
+
+    @PreAuthorize("@accessControl.isDoctor(#authHeader) or @accessControl.isDispenser(#authHeader)")
+    @PostMapping("/stock-levels/rebuild")
+    public ResponseEntity<Void> rebuildStockLevels(@RequestHeader("Authorization") String authHeader) {
+        log.info("Rebuilding stock levels from the database");
+        inventoryService.rebuildStockLevels();
+        return ResponseEntity.noContent().build();
+    }
+
     @PreAuthorize("@accessControl.isDoctor(#authHeader) or @accessControl.isDispenser(#authHeader)")
     @PostMapping
     public ResponseEntity<InventoryItemDTO> createInventoryItem(
@@ -69,6 +131,16 @@ public class InventoryController {
         return ResponseEntity.status(HttpStatus.CREATED).body(createdItem);
     }
 
+    // A whole delivery note as CSV in the request body; rows are checked one by one and reported by line
+    @PreAuthorize("@accessControl.isDoctor(#authHeader) or @accessControl.isDispenser(#authHeader)")
+    @PostMapping(value = "/import", consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<InventoryImportResultDTO> importDelivery(
+            InputStream body,
+            @RequestHeader("Authorization") String authHeader) throws IOException {
+        log.info("Importing a delivery note");
+        return ResponseEntity.ok(inventoryImportService.importDelivery(body));
+    }
+
     @PreAuthorize("@accessControl.isDoctor(#authHeader) or @accessControl.isDispenser(#authHeader)")
     @PutMapping("/{id}")
     public ResponseEntity<InventoryItemDTO> updateInventoryItem(
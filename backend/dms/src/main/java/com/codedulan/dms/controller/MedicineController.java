@@ -28,6 +28,12 @@ public class MedicineController {
         return ResponseEntity.ok(medicineService.getAllMedicines());
     }
 
+    @GetMapping("/low-stock")
+    public ResponseEntity<List<MedicineDTO>> getLowStockMedicines() {
+        log.info("Fetching medicines below their reorder threshold");
+        return ResponseEntity.ok(medicineService.getLowStockMedicines());
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<MedicineDTO> getMedicineById(@PathVariable Long id) {
         log.info("Fetching medicine with id: {}", id);
@@ -1,5 +1,6 @@
 package com.codedulan.dms.controller;
 
+import com.codedulan.dms.dto.AuthenticatedUser;
 import com.codedulan.dms.dto.CreatePaymentDTO;
 import com.codedulan.dms.dto.PaymentDTO;
 import com.codedulan.dms.dto.UpdatePaymentDTO;
@@ -80,18 +81,19 @@ public class PaymentController {
 
     @GetMapping("/my-payments")
     public ResponseEntity<List<PaymentDTO>> getMyPayments(
-            @RequestHeader("Authorization") String authHeader) {
+            @RequestAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE) AuthenticatedUser user) {
         log.info("Fetching payments for authenticated patient");
-        return ResponseEntity.ok(paymentService.getMyPayments(authHeader));
+        return ResponseEntity.ok(paymentService.getMyPayments(user));
     }
 
     @PostMapping
     @PreAuthorize("@accessControl.isDoctor(#authHeader) or @accessControl.isDispenser(#authHeader)")
     public ResponseEntity<PaymentDTO> createPayment(
             @Valid @RequestBody CreatePaymentDTO createDTO,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @RequestHeader("Authorization") String authHeader) {
         log.info("Creating new payment for prescription with id: {}", createDTO.getPrescriptionId());
-        PaymentDTO createdPayment = paymentService.createPayment(createDTO);
+        PaymentDTO createdPayment = paymentService.createPayment(createDTO, idempotencyKey);
         return ResponseEntity.status(HttpStatus.CREATED).body(createdPayment);
     }
 
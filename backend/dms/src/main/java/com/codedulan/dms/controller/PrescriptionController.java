@@ -1,16 +1,25 @@
 package com.codedulan.dms.controller;
 
+import com.codedulan.dms.dto.AuthenticatedUser;
+import com.codedulan.dms.dto.BulkPrescriptionRequest;
+import com.codedulan.dms.dto.BulkPrescriptionResultDTO;
 import com.codedulan.dms.dto.CreatePrescriptionDTO;
 import com.codedulan.dms.dto.PrescriptionDTO;
+import com.codedulan.dms.dto.PrescriptionPage;
 import com.codedulan.dms.dto.UpdatePrescriptionDTO;
+import com.codedulan.dms.service.BulkPrescriptionService;
+import com.codedulan.dms.service.PrescriptionExportService;
 import com.codedulan.dms.service.PrescriptionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
 import java.time.LocalDate;
@@ -22,7 +31,11 @@ import java.util.List;
 @Slf4j
 public class PrescriptionController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final PrescriptionService prescriptionService;
+    private final PrescriptionExportService prescriptionExportService;
+    private final BulkPrescriptionService bulkPrescriptionService;
 
     @GetMapping
     public ResponseEntity<List<PrescriptionDTO>> getAllPrescriptions() {
@@ -42,6 +55,16 @@ public class PrescriptionController {
         return ResponseEntity.ok(prescriptionService.getPrescriptionsByPatient(patientId));
     }
 
+    // Keyset pages of a patient's prescriptions, newest first; the next cursor travels in a header
+    @GetMapping("/patient/{patientId}/timeline")
+    public ResponseEntity<List<PrescriptionDTO>> getPatientTimeline(
+            @PathVariable Long patientId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        log.info("Fetching prescription timeline for patient with id: {}", patientId);
+        return timelineResponse(prescriptionService.getPatientTimeline(patientId, cursor, size));
+    }
+
     @GetMapping("/by-date")
     public ResponseEntity<List<PrescriptionDTO>> getPrescriptionsByDate(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
@@ -49,6 +72,27 @@ public class PrescriptionController {
         return ResponseEntity.ok(prescriptionService.getPrescriptionsByDate(date));
     }
 
+    // Streams the whole range as NDJSON (one prescription per line) or CSV (one item per row)
+    @PreAuthorize("@accessControl.isDoctor(#authHeader) or @accessControl.isDispenser(#authHeader)")
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportPrescriptions(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestHeader("Authorization") String authHeader) {
+        PrescriptionExportService.Format exportFormat = PrescriptionExportService.parseFormat(format);
+        log.info("Exporting prescriptions between dates: {} and {} as {}", startDate, endDate, exportFormat);
+
+        boolean csv = exportFormat == PrescriptionExportService.Format.CSV;
+        String filename = "prescriptions-" + startDate + "-to-" + endDate + (csv ? ".csv" : ".ndjson");
+        StreamingResponseBody body = out -> prescriptionExportService.export(startDate, endDate, exportFormat, out);
+
+        return ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv") : MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+
     @GetMapping("/by-date-range")
     public ResponseEntity<List<PrescriptionDTO>> getPrescriptionsByDateRange(
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
@@ -59,30 +103,51 @@ public class PrescriptionController {
 
     @GetMapping("/my-prescriptions")
     public ResponseEntity<List<PrescriptionDTO>> getMyPrescriptions(
-            @RequestHeader("Authorization") String authHeader) {
+            @RequestAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE) AuthenticatedUser user) {
         log.info("Fetching prescriptions for authenticated patient");
-        return ResponseEntity.ok(prescriptionService.getMyPrescriptions(authHeader));
+        return ResponseEntity.ok(prescriptionService.getMyPrescriptions(user));
+    }
+
+    @GetMapping("/my-prescriptions/timeline")
+    public ResponseEntity<List<PrescriptionDTO>> getMyTimeline(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE) AuthenticatedUser user) {
+        log.info("Fetching prescription timeline for authenticated patient");
+        return timelineResponse(prescriptionService.getMyTimeline(user, cursor, size));
     }
 
     @GetMapping("/my-prescriptions/by-date-range")
     public ResponseEntity<List<PrescriptionDTO>> getMyPrescriptionsByDateRange(
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
-            @RequestHeader("Authorization") String authHeader) {
+            @RequestAttribute(AuthenticatedUser.REQUEST_ATTRIBUTE) AuthenticatedUser user) {
         log.info("Fetching prescriptions for authenticated patient between dates: {} and {}", startDate, endDate);
-        return ResponseEntity.ok(prescriptionService.getMyPrescriptionsByDateRange(startDate, endDate, authHeader));
+        return ResponseEntity.ok(prescriptionService.getMyPrescriptionsByDateRange(startDate, endDate, user));
     }
 
     @PreAuthorize("@accessControl.isDoctor(#authHeader)")
     @PostMapping
     public ResponseEntity<PrescriptionDTO> createPrescription(
             @Valid @RequestBody CreatePrescriptionDTO createDTO,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @RequestHeader("Authorization") String authHeader) {
         log.info("Creating new prescription for patient with id: {}", createDTO.getPatientId());
-        PrescriptionDTO createdPrescription = prescriptionService.createPrescription(createDTO);
+        PrescriptionDTO createdPrescription = prescriptionService.createPrescription(createDTO, idempotencyKey);
         return ResponseEntity.status(HttpStatus.CREATED).body(createdPrescription);
     }
 
+    // Outreach clinics submit a whole session at once; each entry succeeds or fails on its own
+    @PreAuthorize("@accessControl.isDoctor(#authHeader)")
+    @PostMapping("/bulk")
+    public ResponseEntity<BulkPrescriptionResultDTO> createPrescriptions(
+            @Valid @RequestBody BulkPrescriptionRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestHeader("Authorization") String authHeader) {
+        log.info("Bulk creating {} prescriptions", request.getPrescriptions().size());
+        return ResponseEntity.ok(bulkPrescriptionService.createPrescriptions(request, idempotencyKey));
+    }
+
     @PreAuthorize("@accessControl.isDoctor(#authHeader)")
     @PutMapping("/{id}")
     public ResponseEntity<PrescriptionDTO> updatePrescription(
@@ -92,4 +157,12 @@ public class PrescriptionController {
         log.info("Updating prescription with id: {}", id);
         return ResponseEntity.ok(prescriptionService.updatePrescription(id, updateDTO));
     }
-}
\ No newline at end of file
+
+    private ResponseEntity<List<PrescriptionDTO>> timelineResponse(PrescriptionPage page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+}
@@ -76,4 +76,15 @@ public class PrescriptionTemplateController {
         CreatePrescriptionDTO prescriptionDTO = templateService.convertTemplateToCreatePrescriptionDTO(id);
         return ResponseEntity.ok(prescriptionDTO);
     }
-}
\ No newline at end of file
+
+    // Resolves the template against live stock (FEFO) and optionally issues the prescription
+    @PreAuthorize("@accessControl.isDoctor(#authHeader)")
+    @PostMapping("/{id}/apply")
+    public ResponseEntity<TemplateApplicationDTO> applyTemplate(
+            @PathVariable Long id,
+            @RequestBody ApplyTemplateRequest request,
+            @RequestHeader("Authorization") String authHeader) {
+        log.info("Applying prescription template with id {} (create: {})", id, request.isCreate());
+        return ResponseEntity.ok(templateService.applyTemplate(id, request));
+    }
+}
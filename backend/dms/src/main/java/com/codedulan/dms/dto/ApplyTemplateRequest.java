@@ -0,0 +1,23 @@
+package com.codedulan.dms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ApplyTemplateRequest {
+    // required only when create is true
+    private Long patientId;
+
+    private Long diseaseId;
+
+    private String customDisease;
+
+    // replaces the notes built from the template when given
+    private String prescriptionNotes;
+
+    // when false (the default) the template is only resolved against stock and nothing is written
+    private boolean create;
+}
@@ -0,0 +1,75 @@
+package com.codedulan.dms.dto;
+
+import com.codedulan.dms.entity.Appointment;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// List-friendly view of an appointment: only the patient's id and name travel with it,
+// never the barcode image, password hash or medical notes of the full Patient entity.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AppointmentDTO {
+    private Long id;
+    private Integer queueNumber;
+    private LocalDate date;
+    private LocalTime time;
+    private String appointmentType;
+    private String notes;
+    private String appointmentStatus;
+    private PatientSummary patient;
+
+    // used by the JPQL constructor expressions in AppointmentRepository
+    public AppointmentDTO(Long id, Integer queueNumber, LocalDate date, LocalTime time, String appointmentType,
+                          String notes, String appointmentStatus, Long patientId, String firstName, String lastName) {
+        this(id, queueNumber, date, time, appointmentType, notes, appointmentStatus,
+                new PatientSummary(patientId, firstName, lastName));
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PatientSummary {
+        private Long patientId;
+        private String firstName;
+        private String lastName;
+    }
+
+    public static AppointmentDTO fromEntity(Appointment appointment) {
+        return AppointmentDTO.builder()
+                .id(appointment.getId())
+                .queueNumber(appointment.getQueueNumber())
+                .date(appointment.getDate())
+                .time(appointment.getTime())
+                .appointmentType(appointment.getAppointmentType())
+                .notes(appointment.getNotes())
+                .appointmentStatus(appointment.getAppointmentStatus())
+                .patient(new PatientSummary(
+                        appointment.getPatient().getPatientId(),
+                        appointment.getPatient().getFirstName(),
+                        appointment.getPatient().getLastName()))
+                .build();
+    }
+
+    public static AppointmentDTO fromView(AppointmentQueueView view) {
+        return AppointmentDTO.builder()
+                .id(view.getId())
+                .queueNumber(view.getQueueNumber())
+                .date(view.getDate())
+                .time(view.getTime())
+                .appointmentType(view.getAppointmentType())
+                .notes(view.getNotes())
+                .appointmentStatus(view.getAppointmentStatus())
+                .patient(new PatientSummary(
+                        view.getPatientId(),
+                        view.getPatientFirstName(),
+                        view.getPatientLastName()))
+                .build();
+    }
+}
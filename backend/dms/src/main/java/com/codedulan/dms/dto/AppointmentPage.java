@@ -0,0 +1,16 @@
+package com.codedulan.dms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// One keyset page of appointments; nextCursor is null on the last page
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppointmentPage {
+    private List<AppointmentDTO> items;
+    private String nextCursor;
+}
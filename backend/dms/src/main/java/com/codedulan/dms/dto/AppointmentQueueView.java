@@ -0,0 +1,18 @@
+package com.codedulan.dms.dto;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Row shape of the native queue-position queries on AppointmentRepository
+public interface AppointmentQueueView {
+    Long getId();
+    Integer getQueueNumber();
+    LocalDate getDate();
+    LocalTime getTime();
+    String getAppointmentType();
+    String getNotes();
+    String getAppointmentStatus();
+    Long getPatientId();
+    String getPatientFirstName();
+    String getPatientLastName();
+}
@@ -0,0 +1,33 @@
+package com.codedulan.dms.dto;
+
+import com.codedulan.dms.exception.ResourceNotFoundException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// The caller as resolved once by JWTAuthFilter and stored on the request, so services
+// do not have to re-verify the token or look the patient up by email again.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AuthenticatedUser {
+
+    public static final String REQUEST_ATTRIBUTE = "authenticatedUser";
+
+    private String email;
+    private String role;
+
+    // only set for patients
+    private Long patientId;
+
+    public boolean isPatient() {
+        return "PATIENT".equals(role);
+    }
+
+    public Long requirePatientId() {
+        if (patientId == null) {
+            throw new ResourceNotFoundException("Patient not found for the authenticated user");
+        }
+        return patientId;
+    }
+}
@@ -0,0 +1,13 @@
+package com.codedulan.dms.dto;
+
+import com.codedulan.dms.entity.InventoryItem;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Units taken from one locked batch by the FEFO allocator
+@Data
+@AllArgsConstructor
+public class BatchAllocation {
+    private InventoryItem inventoryItem;
+    private int quantity;
+}
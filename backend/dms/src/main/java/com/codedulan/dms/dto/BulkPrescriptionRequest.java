@@ -0,0 +1,17 @@
+package com.codedulan.dms.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkPrescriptionRequest {
+    // entries are validated one by one in the service so a bad entry fails alone
+    @NotEmpty(message = "At least one prescription is required")
+    private List<CreatePrescriptionDTO> prescriptions;
+}
@@ -0,0 +1,27 @@
+package com.codedulan.dms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Outcome of a bulk issuance; entries are in request order and fail independently of each other
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkPrescriptionResultDTO {
+    private int succeeded;
+    private int failed;
+    private List<Entry> entries;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry {
+        private int index;
+        private boolean success;
+        private PrescriptionDTO prescription;
+        private String error;
+    }
+}
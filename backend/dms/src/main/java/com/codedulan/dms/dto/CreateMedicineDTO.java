@@ -1,6 +1,7 @@
 package com.codedulan.dms.dto;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -17,4 +18,7 @@ public class CreateMedicineDTO {
     private Double lethalDosagePerKg;
 
     private Integer weight;
+
+    @PositiveOrZero(message = "Reorder threshold cannot be negative")
+    private Integer reorderThreshold;
 }
@@ -10,9 +10,11 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 public class CreatePrescriptionItemDTO {
-    @NotNull(message = "Inventory item ID is required")
+    // Either a specific batch, or a medicine whose batches are allocated first-expiry-first-out
     private Long inventoryItemId;
 
+    private Long medicineId;
+
     @NotNull(message = "Quantity is required")
     @Min(value = 1, message = "Quantity must be at least 1")
     private Integer quantity;
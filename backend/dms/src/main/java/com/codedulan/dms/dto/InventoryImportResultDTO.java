@@ -0,0 +1,28 @@
+package com.codedulan.dms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Outcome of a delivery import; rejected rows are listed by their line in the file
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryImportResultDTO {
+    private int rowsRead;
+    private int imported;
+    private int rejected;
+    private List<RowError> errors;
+    // true when more rows were rejected than the report lists
+    private boolean errorsTruncated;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowError {
+        private int line;
+        private String message;
+    }
+}
@@ -14,6 +14,10 @@ public class MedicineDTO {
     private String description;
     private Double lethalDosagePerKg;
     private Integer weight;
+    private Integer reorderThreshold;
+    private boolean lowStock;
+    // filled from the in-memory stock levels where a screen needs it, e.g. the search autocomplete
+    private Long availableQuantity;
 
     public static MedicineDTO fromEntity(Medicine medicine) {
         return MedicineDTO.builder()
@@ -22,6 +26,8 @@ public class MedicineDTO {
                 .description(medicine.getDescription())
                 .lethalDosagePerKg(medicine.getLethalDosagePerKg())
                 .weight(medicine.getWeight())
+                .reorderThreshold(medicine.getReorderThreshold())
+                .lowStock(medicine.isLowStock())
                 .build();
     }
 }
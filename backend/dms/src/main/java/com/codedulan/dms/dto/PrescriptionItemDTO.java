@@ -16,22 +16,26 @@ public class PrescriptionItemDTO {
     private Long id;
     private Long inventoryItemId;
     private String medicineName;
+    private String batchNumber;
     private Integer quantity;
     private Integer medicineWeight; // Add this field
     private BigDecimal sellPrice;
     private String dosageInstructions;
     private Integer daysSupply;
+    private Integer dispensedQuantity;
 
     public static PrescriptionItemDTO fromEntity(PrescriptionItem item) {
         return PrescriptionItemDTO.builder()
                 .id(item.getId())
                 .inventoryItemId(item.getInventoryItem().getId())
                 .medicineName(item.getInventoryItem().getMedicine().getName())
+                .batchNumber(item.getInventoryItem().getBatchNumber())
                 .medicineWeight(item.getInventoryItem().getMedicine().getWeight())
                 .sellPrice(item.getInventoryItem().getSellPrice())
                 .quantity(item.getQuantity())
                 .dosageInstructions(item.getDosageInstructions())
                 .daysSupply(item.getDaysSupply())
+                .dispensedQuantity(item.getDispensedQuantity())
                 .build();
     }
 }
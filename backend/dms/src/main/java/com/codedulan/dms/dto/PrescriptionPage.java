@@ -0,0 +1,16 @@
+package com.codedulan.dms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// One keyset page of a patient's prescription timeline; nextCursor is null on the last page
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrescriptionPage {
+    private List<PrescriptionDTO> items;
+    private String nextCursor;
+}
@@ -0,0 +1,32 @@
+package com.codedulan.dms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// A single change to a day's queue, pushed to subscribers of /api/appointments/daily-queue/stream.
+// Positions are not sent for other rows; clients keep the day ordered by time.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class QueueDelta {
+
+    public enum Type {
+        CREATED,
+        MOVED,
+        STATUS_CHANGED,
+        REMOVED
+    }
+
+    private Type type;
+    private AppointmentDTO appointment;
+
+    // only set for MOVED
+    private LocalDate previousDate;
+    private LocalTime previousTime;
+}
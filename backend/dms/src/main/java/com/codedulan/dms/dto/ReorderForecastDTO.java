@@ -0,0 +1,23 @@
+package com.codedulan.dms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReorderForecastDTO {
+    private Long medicineId;
+    private long available;
+    // smoothed units dispensed per day
+    private double dailyDemand;
+    // null when there is no demand to run out from
+    private Double daysOfCover;
+    private long reorderPoint;
+    // the day stock is projected to reach the reorder point, null when there is no demand
+    private LocalDate reorderDate;
+    private boolean reorderNow;
+}
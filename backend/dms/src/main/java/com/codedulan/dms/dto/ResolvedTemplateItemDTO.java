@@ -0,0 +1,34 @@
+package com.codedulan.dms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// A template line with the batches it would draw from, earliest expiry first
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ResolvedTemplateItemDTO {
+    private Long medicineId;
+    private String medicineName;
+    private Integer quantity;
+    private String dosageInstructions;
+    private Integer daysSupply;
+    private Integer totalQuantity;
+    private List<PlannedBatch> batches;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PlannedBatch {
+        private Long inventoryItemId;
+        private String batchNumber;
+        private LocalDate expiryDate;
+        private Integer quantity;
+    }
+}
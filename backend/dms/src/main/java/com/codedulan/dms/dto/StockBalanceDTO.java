@@ -0,0 +1,18 @@
+package com.codedulan.dms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockBalanceDTO {
+    private Long medicineId;
+    private LocalDateTime at;
+    private long balance;
+    // the snapshot the balance was rolled forward from, null when the ledger was replayed from the start
+    private LocalDateTime snapshotTakenAt;
+}
@@ -0,0 +1,15 @@
+package com.codedulan.dms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockLevelDTO {
+    private Long medicineId;
+    private long available;
+    private long reserved;
+    private long expiring;
+}
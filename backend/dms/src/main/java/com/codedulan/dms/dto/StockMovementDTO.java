@@ -0,0 +1,33 @@
+package com.codedulan.dms.dto;
+
+import com.codedulan.dms.entity.StockMovement;
+import com.codedulan.dms.entity.StockMovementType;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StockMovementDTO {
+    private Long id;
+    private Long inventoryItemId;
+    private Long medicineId;
+    private StockMovementType type;
+    private Integer quantity;
+    private LocalDateTime occurredAt;
+    private String note;
+
+    public static StockMovementDTO fromEntity(StockMovement movement) {
+        return StockMovementDTO.builder()
+                .id(movement.getId())
+                .inventoryItemId(movement.getInventoryItemId())
+                .medicineId(movement.getMedicineId())
+                .type(movement.getType())
+                .quantity(movement.getQuantity())
+                .occurredAt(movement.getOccurredAt())
+                .note(movement.getNote())
+                .build();
+    }
+}
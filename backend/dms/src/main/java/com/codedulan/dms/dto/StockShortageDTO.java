@@ -0,0 +1,15 @@
+package com.codedulan.dms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockShortageDTO {
+    private Long medicineId;
+    private String medicineName;
+    private Integer requested;
+    private Integer available;
+}
@@ -0,0 +1,21 @@
+package com.codedulan.dms.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Result of applying a template: the resolved lines, any shortages, the request that can be submitted
+// as-is, and the created prescription when creation was asked for and stock allowed it
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TemplateApplicationDTO {
+    private List<ResolvedTemplateItemDTO> items;
+    private List<StockShortageDTO> shortages;
+    private CreatePrescriptionDTO prescription;
+    private PrescriptionDTO created;
+}
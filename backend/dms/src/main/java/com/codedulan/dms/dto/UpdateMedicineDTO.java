@@ -1,5 +1,6 @@
 package com.codedulan.dms.dto;
 
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -12,4 +13,7 @@ public class UpdateMedicineDTO {
     private Double lethalDosagePerKg;
 
     private Integer weight;
+
+    @PositiveOrZero(message = "Reorder threshold cannot be negative")
+    private Integer reorderThreshold;
 }
@@ -18,7 +18,14 @@ import java.time.LocalTime;
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
-@Table(name = "tbl_appointment")
+@Table(name = "tbl_appointment",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_appointment_date_time", columnNames = {"date", "time"})
+        },
+        indexes = {
+                @Index(name = "idx_appointment_keyset", columnList = "date, time, appointment_id"),
+                @Index(name = "idx_appointment_patient_date", columnList = "patient_id, date, time")
+        })
 public class Appointment {
 
     @Id
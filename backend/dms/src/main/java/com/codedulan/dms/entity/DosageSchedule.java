@@ -0,0 +1,48 @@
+package com.codedulan.dms.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Parsed form of a dosage instruction, stored with the prescription item so totals never
+// have to be worked out from the text again.
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder = true)
+public class DosageSchedule {
+
+    // doses given in each period, e.g. 3 per 1 day for TDS or 1 per 7 days for weekly
+    @Column(name = "doses_per_period")
+    private Integer dosesPerPeriod;
+
+    @Column(name = "dose_period_days")
+    private Integer periodDays;
+
+    // set for interval instructions such as q6h
+    @Column(name = "dose_interval_hours")
+    private Integer intervalHours;
+
+    // duration written in the instruction itself, e.g. "for 2 weeks"
+    @Column(name = "dose_duration_days")
+    private Integer durationDays;
+
+    // fixed number of doses regardless of days supply, used for STAT and taper schedules
+    @Column(name = "fixed_dose_count")
+    private Integer fixedDoseCount;
+
+    @Column(name = "as_needed")
+    private Boolean asNeeded;
+
+    public int dosesOver(int days) {
+        if (fixedDoseCount != null) {
+            return fixedDoseCount;
+        }
+        // round up so a partial period still gets its dose, e.g. weekly for 10 days is 2 doses
+        return (days * dosesPerPeriod + periodDays - 1) / periodDays;
+    }
+}
@@ -9,7 +9,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "inventory_items")
+@Table(name = "inventory_items",
+        indexes = {
+                @Index(name = "idx_inventory_medicine_expiry", columnList = "medicine_id, expiry_date"),
+                @Index(name = "idx_inventory_expiry", columnList = "expiry_date")
+        })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -28,6 +28,15 @@ public class Medicine {
     @Column(name = "weight")
     private Integer weight;
 
+    // units below which the medicine needs reordering; when unset, 20% of the units received in unexpired batches
+    @Column(name = "reorder_threshold")
+    private Integer reorderThreshold;
+
+    // kept current by InventoryService on every stock change; the partial index in schema.sql covers the true rows
+    @Column(name = "low_stock", nullable = false, columnDefinition = "boolean default false")
+    @Builder.Default
+    private boolean lowStock = false;
+
     // Relationships
     @OneToMany(mappedBy = "medicine", cascade = CascadeType.ALL)
     @ToString.Exclude
@@ -2,18 +2,33 @@ package com.codedulan.dms.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "prescriptions")
+@Table(name = "prescriptions",
+        indexes = @Index(name = "idx_prescription_patient_issue_date", columnList = "patient_id, issue_date"))
+// Everything PrescriptionDTO.fromEntity touches, loaded in the same statement as the prescriptions
+@NamedEntityGraph(name = Prescription.DETAILS_GRAPH,
+        attributeNodes = {
+                @NamedAttributeNode("patient"),
+                @NamedAttributeNode("disease"),
+                @NamedAttributeNode(value = "prescriptionItems", subgraph = "items")
+        },
+        subgraphs = {
+                @NamedSubgraph(name = "items", attributeNodes = @NamedAttributeNode(value = "inventoryItem", subgraph = "inventory")),
+                @NamedSubgraph(name = "inventory", attributeNodes = @NamedAttributeNode("medicine"))
+        })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class Prescription {
+    public static final String DETAILS_GRAPH = "Prescription.details";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -37,6 +52,7 @@ public class Prescription {
 
     // Relationships
     @OneToMany(mappedBy = "prescription", cascade = CascadeType.ALL, orphanRemoval = true)
+    @BatchSize(size = 50) // fallback for reads that do not use the details graph
     @ToString.Exclude
     @EqualsAndHashCode.Exclude
     private List<PrescriptionItem> prescriptionItems = new ArrayList<>();
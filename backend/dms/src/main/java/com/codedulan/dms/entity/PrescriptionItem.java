@@ -35,4 +35,11 @@ public class PrescriptionItem {
 
     @Column(name = "days_supply")
     private Integer daysSupply;
+
+    @Embedded
+    private DosageSchedule dosageSchedule;
+
+    // Units taken from this batch; a line prescribed by medicine can be split over several batches
+    @Column(name = "dispensed_quantity")
+    private Integer dispensedQuantity;
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.codedulan.dms.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDateTime;
+
+// One signed change to a batch's stock. Rows are only ever inserted; the ids come from a pooled
+// sequence so Hibernate can batch the inserts, which IDENTITY keys would prevent.
+@Entity
+@Immutable
+@Table(name = "stock_movements",
+        indexes = {
+                @Index(name = "idx_stock_movement_medicine_time", columnList = "medicine_id, occurred_at"),
+                @Index(name = "idx_stock_movement_item_time", columnList = "inventory_item_id, occurred_at")
+        })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StockMovement {
+    @Id
+    @SequenceGenerator(name = "stock_movement_sequence", sequenceName = "stock_movement_sequence", allocationSize = 50)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_movement_sequence")
+    private Long id;
+
+    // plain ids rather than associations, so recording a movement never loads the batch or medicine
+    @Column(name = "inventory_item_id", nullable = false)
+    private Long inventoryItemId;
+
+    @Column(name = "medicine_id", nullable = false)
+    private Long medicineId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private StockMovementType type;
+
+    // positive for stock coming in, negative for stock going out
+    @Column(nullable = false)
+    private Integer quantity;
+
+    @Column(name = "occurred_at", nullable = false)
+    private LocalDateTime occurredAt;
+
+    private String note;
+}
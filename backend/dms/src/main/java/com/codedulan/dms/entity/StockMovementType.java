@@ -0,0 +1,9 @@
+package com.codedulan.dms.entity;
+
+public enum StockMovementType {
+    RECEIVE,
+    DISPENSE,
+    RETURN,
+    ADJUST,
+    EXPIRE
+}
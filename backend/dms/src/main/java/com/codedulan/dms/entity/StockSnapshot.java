@@ -0,0 +1,36 @@
+package com.codedulan.dms.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDateTime;
+
+// A medicine's ledger balance at takenAt, so past balances start from the nearest snapshot
+// instead of replaying every movement
+@Entity
+@Immutable
+@Table(name = "stock_snapshots",
+        indexes = @Index(name = "idx_stock_snapshot_medicine_time", columnList = "medicine_id, taken_at", unique = true))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StockSnapshot {
+    @Id
+    @SequenceGenerator(name = "stock_snapshot_sequence", sequenceName = "stock_snapshot_sequence", allocationSize = 50)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_snapshot_sequence")
+    private Long id;
+
+    @Column(name = "medicine_id", nullable = false)
+    private Long medicineId;
+
+    @Column(name = "taken_at", nullable = false)
+    private LocalDateTime takenAt;
+
+    @Column(nullable = false)
+    private Long balance;
+}
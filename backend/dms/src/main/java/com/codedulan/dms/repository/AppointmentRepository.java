@@ -1,16 +1,28 @@
 package com.codedulan.dms.repository;
 
+import com.codedulan.dms.dto.AppointmentDTO;
+import com.codedulan.dms.dto.AppointmentQueueView;
 import com.codedulan.dms.entity.Appointment;
 import com.codedulan.dms.entity.Patient;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface AppointmentRepository extends JpaRepository<Appointment, Long> {
+
+    // Selects straight into AppointmentDTO, joining only the patient's id and name
+    String SUMMARY_SELECT = "SELECT new com.codedulan.dms.dto.AppointmentDTO(" +
+            "a.id, a.queueNumber, a.date, a.time, a.appointmentType, a.notes, a.appointmentStatus, " +
+            "p.patientId, p.firstName, p.lastName) " +
+            "FROM Appointment a JOIN a.patient p ";
+
     List<Appointment> findByDateAndPatient(LocalDate date, Patient patient);
 
     boolean existsByDateAndTime(LocalDate date, LocalTime time);
@@ -27,8 +39,100 @@ public interface AppointmentRepository extends JpaRepository<Appointment, Long>
     @Query("SELECT a.time FROM Appointment a WHERE a.date = :date")
     List<LocalTime> findTimesByDate(@Param("date") LocalDate date);
 
+    // Booked slot count per day for a date range
+    @Query("SELECT a.date, COUNT(a) " +
+            "FROM Appointment a " +
+            "WHERE a.date BETWEEN :startDate AND :endDate " +
+            "GROUP BY a.date")
+    List<Object[]> countBookingsByDateBetween(@Param("startDate") LocalDate startDate,
+                                              @Param("endDate") LocalDate endDate);
+
     // Changed from findByDateOrderByQueueNumberAsc to findByDateOrderByTimeAsc
     List<Appointment> findByDateOrderByTimeAsc(LocalDate date);
 
     List<Appointment> findByDateOrderByQueueNumberAsc(LocalDate date);
-}
\ No newline at end of file
+
+    long countByDateAndTimeBefore(LocalDate date, LocalTime time);
+
+    // Renumbers a whole day in time order with one statement, touching only rows whose number changed
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE tbl_appointment a SET queue_number = q.position " +
+            "FROM (SELECT appointment_id, ROW_NUMBER() OVER (ORDER BY time, appointment_id) AS position " +
+            "      FROM tbl_appointment WHERE date = :date) q " +
+            "WHERE a.appointment_id = q.appointment_id " +
+            "AND a.queue_number IS DISTINCT FROM q.position", nativeQuery = true)
+    int renumberQueue(@Param("date") LocalDate date);
+
+    // A patient's appointments with their position in each day's queue, numbered across all patients
+    @Query(value = "SELECT q.appointment_id AS id, q.queue_position AS \"queueNumber\", q.date AS date, q.time AS time, " +
+            "q.appointment_type AS \"appointmentType\", q.notes AS notes, q.appointment_status AS \"appointmentStatus\", " +
+            "p.patient_id AS \"patientId\", p.first_name AS \"patientFirstName\", p.last_name AS \"patientLastName\" " +
+            "FROM (SELECT a.*, ROW_NUMBER() OVER (PARTITION BY a.date ORDER BY a.time, a.appointment_id) AS queue_position " +
+            "      FROM tbl_appointment a WHERE a.date BETWEEN :startDate AND :endDate) q " +
+            "JOIN tbl_patient p ON p.patient_id = q.patient_id " +
+            "WHERE q.patient_id = :patientId " +
+            "ORDER BY q.date, q.time", nativeQuery = true)
+    List<AppointmentQueueView> findPatientQueuePositions(@Param("patientId") Long patientId,
+                                                         @Param("startDate") LocalDate startDate,
+                                                         @Param("endDate") LocalDate endDate);
+
+    @Query(SUMMARY_SELECT + "WHERE a.date = :date AND p.patientId = :patientId ORDER BY a.time")
+    List<AppointmentDTO> findSummariesByDateAndPatientId(@Param("date") LocalDate date,
+                                                         @Param("patientId") Long patientId);
+
+    @Query(SUMMARY_SELECT + "WHERE a.date BETWEEN :startDate AND :endDate AND p.patientId = :patientId " +
+            "ORDER BY a.date, a.time")
+    List<AppointmentDTO> findSummariesByDateBetweenAndPatientId(@Param("startDate") LocalDate startDate,
+                                                                @Param("endDate") LocalDate endDate,
+                                                                @Param("patientId") Long patientId);
+
+    @Query(SUMMARY_SELECT + "WHERE a.date BETWEEN :startDate AND :endDate ORDER BY a.date, a.time")
+    List<AppointmentDTO> findSummariesByDateBetween(@Param("startDate") LocalDate startDate,
+                                                    @Param("endDate") LocalDate endDate);
+
+    @Query(SUMMARY_SELECT + "WHERE a.date = :date ORDER BY a.time")
+    List<AppointmentDTO> findSummariesByDate(@Param("date") LocalDate date);
+
+    String SUMMARY_FILTERS = "(:status IS NULL OR a.appointmentStatus = :status) " +
+            "AND (:type IS NULL OR a.appointmentType = :type) " +
+            "AND (:patientId IS NULL OR p.patientId = :patientId) ";
+
+    String KEYSET_ORDER = "ORDER BY a.date DESC, a.time DESC, a.id DESC";
+
+    // Keyset pages, newest first. Pass a Pageable of size + 1 to learn whether another page exists.
+    @Query(SUMMARY_SELECT + "WHERE " + SUMMARY_FILTERS + KEYSET_ORDER)
+    List<AppointmentDTO> findSummaryPage(@Param("status") String status,
+                                         @Param("type") String type,
+                                         @Param("patientId") Long patientId,
+                                         Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "WHERE " + SUMMARY_FILTERS +
+            "AND (a.date, a.time, a.id) < (:afterDate, :afterTime, :afterId) " + KEYSET_ORDER)
+    List<AppointmentDTO> findSummaryPageAfter(@Param("status") String status,
+                                              @Param("type") String type,
+                                              @Param("patientId") Long patientId,
+                                              @Param("afterDate") LocalDate afterDate,
+                                              @Param("afterTime") LocalTime afterTime,
+                                              @Param("afterId") Long afterId,
+                                              Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "WHERE a.id IN :ids ORDER BY a.date, a.time")
+    List<AppointmentDTO> findSummariesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Set-based cancellation; RETURNING hands back only the rows this statement actually changed
+    @Query(value = "UPDATE tbl_appointment SET appointment_status = 'CANCELLED', updated_at = CURRENT_TIMESTAMP " +
+            "WHERE date BETWEEN :startDate AND :endDate " +
+            "AND appointment_status IS DISTINCT FROM 'CANCELLED' " +
+            "RETURNING appointment_id", nativeQuery = true)
+    List<Long> cancelInRange(@Param("startDate") LocalDate startDate,
+                             @Param("endDate") LocalDate endDate);
+
+    @Query(value = "UPDATE tbl_appointment SET appointment_status = 'CANCELLED', updated_at = CURRENT_TIMESTAMP " +
+            "WHERE date BETWEEN :startDate AND :endDate " +
+            "AND appointment_type IN (:types) " +
+            "AND appointment_status IS DISTINCT FROM 'CANCELLED' " +
+            "RETURNING appointment_id", nativeQuery = true)
+    List<Long> cancelInRangeByTypes(@Param("startDate") LocalDate startDate,
+                                    @Param("endDate") LocalDate endDate,
+                                    @Param("types") Collection<String> types);
+}
@@ -0,0 +1,59 @@
+package com.codedulan.dms.repository;
+
+import com.codedulan.dms.entity.InventoryItem;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+// JDBC batch inserts for delivery imports. Inventory items use IDENTITY keys, which stop Hibernate
+// from batching inserts, so each chunk goes out as one JDBC batch and the generated ids are read back.
+@Repository
+@RequiredArgsConstructor
+public class InventoryBulkInsertRepository {
+
+    private static final String INSERT_ITEM =
+            "INSERT INTO inventory_items (medicine_id, batch_number, expiry_date, quantity, remaining_quantity, " +
+            "buy_price, sell_price, received_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void insertItems(List<InventoryItem> items) {
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement(INSERT_ITEM, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        InventoryItem item = items.get(i);
+                        ps.setLong(1, item.getMedicine().getId());
+                        ps.setString(2, item.getBatchNumber());
+                        ps.setDate(3, Date.valueOf(item.getExpiryDate()));
+                        ps.setInt(4, item.getQuantity());
+                        ps.setInt(5, item.getRemainingQuantity());
+                        ps.setBigDecimal(6, item.getBuyPrice());
+                        ps.setBigDecimal(7, item.getSellPrice());
+                        ps.setDate(8, Date.valueOf(item.getReceivedDate()));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return items.size();
+                    }
+                }, keys);
+
+        List<Map<String, Object>> rows = keys.getKeyList();
+        if (rows.size() != items.size()) {
+            throw new IllegalStateException("Expected " + items.size() + " generated keys but got " + rows.size());
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            items.get(i).setId(((Number) rows.get(i).get("id")).longValue());
+        }
+    }
+}
@@ -2,11 +2,16 @@ package com.codedulan.dms.repository;
 
 import com.codedulan.dms.entity.InventoryItem;
 import com.codedulan.dms.entity.Medicine;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -19,6 +24,56 @@ public interface InventoryRepository extends JpaRepository<InventoryItem, Long>
 
     List<InventoryItem> findByExpiryDateBeforeOrderByExpiryDateAsc(LocalDate date);
 
-    @Query("SELECT i FROM InventoryItem i WHERE i.remainingQuantity < i.quantity * 0.2")
-    List<InventoryItem> findLowStockItems();
-}
\ No newline at end of file
+    // Unexpired batches of medicines flagged as low on stock; the flag is maintained, so no per-row scan
+    @Query("SELECT i FROM InventoryItem i JOIN FETCH i.medicine m " +
+            "WHERE m.lowStock = true AND i.expiryDate >= :today ORDER BY m.name, i.expiryDate")
+    List<InventoryItem> findLowStockItems(@Param("today") LocalDate today);
+
+    @Query("SELECT i.medicine.id FROM InventoryItem i WHERE i.id = :id")
+    Long findMedicineIdById(@Param("id") Long id);
+
+    // Medicines with a batch whose last usable day falls in [from, to), read off the expiry_date index
+    @Query("SELECT DISTINCT i.medicine.id FROM InventoryItem i WHERE i.expiryDate >= :from AND i.expiryDate < :to")
+    List<Long> findMedicineIdsWithBatchesExpiringBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Feeds the in-memory stock levels: id, medicine id, expiry date and remaining quantity of each usable batch
+    @Query("SELECT i.id, i.medicine.id, i.expiryDate, i.remainingQuantity FROM InventoryItem i WHERE i.expiryDate >= :today")
+    List<Object[]> findUnexpiredBatchLevels(@Param("today") LocalDate today);
+
+    // Locks the rows in id order so concurrent prescriptions touching the same items cannot deadlock
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i FROM InventoryItem i JOIN FETCH i.medicine WHERE i.id IN :ids ORDER BY i.id")
+    List<InventoryItem> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    // Check and decrement happen in one statement; returns 0 when the item is missing or short of stock
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE InventoryItem i SET i.remainingQuantity = i.remainingQuantity - :quantity " +
+            "WHERE i.id = :id AND i.remainingQuantity >= :quantity")
+    int decrementRemainingQuantity(@Param("id") Long id, @Param("quantity") int quantity);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE InventoryItem i SET i.remainingQuantity = i.remainingQuantity + :quantity WHERE i.id = :id")
+    int incrementRemainingQuantity(@Param("id") Long id, @Param("quantity") int quantity);
+
+    // Usable batches for several medicines at once, grouped by medicine and in FEFO order within each:
+    // id, medicine id, batch number, expiry date and remaining quantity. Plain rows rather than entities,
+    // so a later lock in the same transaction reads the batches afresh instead of reusing stale instances.
+    @Query("SELECT i.id, i.medicine.id, i.batchNumber, i.expiryDate, i.remainingQuantity FROM InventoryItem i " +
+            "WHERE i.medicine.id IN :medicineIds AND i.remainingQuantity > 0 AND i.expiryDate >= :today " +
+            "ORDER BY i.medicine.id, i.expiryDate, i.id")
+    List<Object[]> findUsableBatchLevelsForMedicines(@Param("medicineIds") Collection<Long> medicineIds,
+                                                     @Param("today") LocalDate today);
+
+    // Locks only the earliest-expiring batches needed to cover the quantity, in id order.
+    // Batches are counted while running totals from earlier batches stay below the requested quantity.
+    @Query(value = "SELECT i.* FROM inventory_items i WHERE i.id IN (" +
+            "SELECT ranked.id FROM (" +
+            "SELECT b.id, SUM(b.remaining_quantity) OVER (ORDER BY b.expiry_date, b.id) - b.remaining_quantity AS taken_before " +
+            "FROM inventory_items b " +
+            "WHERE b.medicine_id = :medicineId AND b.remaining_quantity > 0 AND b.expiry_date >= :today" +
+            ") ranked WHERE ranked.taken_before < :quantity) " +
+            "ORDER BY i.id FOR UPDATE", nativeQuery = true)
+    List<InventoryItem> lockBatchesForAllocation(@Param("medicineId") Long medicineId,
+                                                 @Param("quantity") int quantity,
+                                                 @Param("today") LocalDate today);
+}
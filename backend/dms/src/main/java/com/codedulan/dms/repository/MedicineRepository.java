@@ -2,8 +2,14 @@ package com.codedulan.dms.repository;
 
 import com.codedulan.dms.entity.Medicine;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,4 +18,35 @@ public interface MedicineRepository extends JpaRepository<Medicine, Long> {
     Optional<Medicine> findByName(String name);
     List<Medicine> findByNameContainingIgnoreCase(String name);
     boolean existsByName(String name);
+
+    // id and name only, for resolving medicines by name without loading the entities
+    @Query("SELECT m.id, m.name FROM Medicine m")
+    List<Object[]> findAllIdsAndNames();
+
+    // id and reorder threshold of every medicine, for the reorder forecast
+    @Query("SELECT m.id, m.reorderThreshold FROM Medicine m")
+    List<Object[]> findAllReorderThresholds();
+
+    // served by the partial index on low_stock, so the cost follows the number of flagged medicines
+    List<Medicine> findByLowStockTrueOrderByName();
+
+    // true when the unexpired stock of m is below its threshold
+    String LOW_STOCK_EXPRESSION = "CASE WHEN " +
+            "(SELECT COALESCE(SUM(i.remainingQuantity), 0) FROM InventoryItem i " +
+            "WHERE i.medicine = m AND i.expiryDate >= :today) < " +
+            "COALESCE(m.reorderThreshold, (SELECT COALESCE(SUM(r.quantity), 0) * 0.2 FROM InventoryItem r " +
+            "WHERE r.medicine = m AND r.expiryDate >= :today)) " +
+            "THEN true ELSE false END";
+
+    // transactional so it also runs on its own, outside a service transaction
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Medicine m SET m.lowStock = " + LOW_STOCK_EXPRESSION + " WHERE m.id IN :ids")
+    int refreshLowStock(@Param("ids") Collection<Long> ids, @Param("today") LocalDate today);
+
+    // every medicine, for startup and on-demand recomputes
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Medicine m SET m.lowStock = " + LOW_STOCK_EXPRESSION)
+    int refreshAllLowStock(@Param("today") LocalDate today);
 }
\ No newline at end of file
@@ -15,6 +15,8 @@ import java.util.Optional;
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
     List<Payment> findByPatient(Patient patient);
 
+    List<Payment> findByPatientPatientId(Long patientId);
+
     Optional<Payment> findByPrescription(Prescription prescription);
 
     List<Payment> findByStatus(Payment.PaymentStatus status);
@@ -0,0 +1,111 @@
+package com.codedulan.dms.repository;
+
+import com.codedulan.dms.entity.DosageSchedule;
+import com.codedulan.dms.entity.Prescription;
+import com.codedulan.dms.entity.PrescriptionItem;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+
+// JDBC batch inserts for bulk issuance. Prescriptions and items use IDENTITY keys, which stop Hibernate
+// from batching inserts, so these go through JdbcTemplate in the same transaction and read the
+// generated ids back onto the objects.
+@Repository
+@RequiredArgsConstructor
+public class PrescriptionBulkInsertRepository {
+
+    private static final String INSERT_PRESCRIPTION =
+            "INSERT INTO prescriptions (patient_id, disease_id, custom_disease, issue_date, prescription_notes) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    private static final String INSERT_ITEM =
+            "INSERT INTO prescription_items (prescription_id, inventory_item_id, quantity, dosage_instructions, " +
+            "days_supply, dispensed_quantity, doses_per_period, dose_period_days, dose_interval_hours, " +
+            "dose_duration_days, fixed_dose_count, as_needed) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void insertPrescriptions(List<Prescription> prescriptions) {
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement(INSERT_PRESCRIPTION, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Prescription prescription = prescriptions.get(i);
+                        ps.setLong(1, prescription.getPatient().getPatientId());
+                        setNullable(ps, 2, prescription.getDisease() != null ? prescription.getDisease().getId() : null, Types.BIGINT);
+                        ps.setString(3, prescription.getCustomDisease());
+                        ps.setTimestamp(4, Timestamp.valueOf(prescription.getIssueDate()));
+                        ps.setString(5, prescription.getPrescriptionNotes());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return prescriptions.size();
+                    }
+                }, keys);
+        assignIds(keys, prescriptions.size(), (i, id) -> prescriptions.get(i).setId(id));
+    }
+
+    public void insertItems(List<PrescriptionItem> items) {
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement(INSERT_ITEM, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        PrescriptionItem item = items.get(i);
+                        DosageSchedule schedule = item.getDosageSchedule() != null ? item.getDosageSchedule() : new DosageSchedule();
+                        ps.setLong(1, item.getPrescription().getId());
+                        ps.setLong(2, item.getInventoryItem().getId());
+                        ps.setInt(3, item.getQuantity());
+                        ps.setString(4, item.getDosageInstructions());
+                        setNullable(ps, 5, item.getDaysSupply(), Types.INTEGER);
+                        setNullable(ps, 6, item.getDispensedQuantity(), Types.INTEGER);
+                        setNullable(ps, 7, schedule.getDosesPerPeriod(), Types.INTEGER);
+                        setNullable(ps, 8, schedule.getPeriodDays(), Types.INTEGER);
+                        setNullable(ps, 9, schedule.getIntervalHours(), Types.INTEGER);
+                        setNullable(ps, 10, schedule.getDurationDays(), Types.INTEGER);
+                        setNullable(ps, 11, schedule.getFixedDoseCount(), Types.INTEGER);
+                        setNullable(ps, 12, schedule.getAsNeeded(), Types.BOOLEAN);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return items.size();
+                    }
+                }, keys);
+        assignIds(keys, items.size(), (i, id) -> items.get(i).setId(id));
+    }
+
+    private static void setNullable(PreparedStatement ps, int index, Object value, int sqlType) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, sqlType);
+        } else {
+            ps.setObject(index, value, sqlType);
+        }
+    }
+
+    private static void assignIds(GeneratedKeyHolder keys, int expected, IdAssigner assigner) {
+        List<Map<String, Object>> rows = keys.getKeyList();
+        if (rows.size() != expected) {
+            throw new IllegalStateException("Expected " + expected + " generated keys but got " + rows.size());
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            assigner.assign(i, ((Number) rows.get(i).get("id")).longValue());
+        }
+    }
+
+    @FunctionalInterface
+    private interface IdAssigner {
+        void assign(int index, Long id);
+    }
+}
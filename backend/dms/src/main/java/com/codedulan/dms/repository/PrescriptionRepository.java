@@ -3,27 +3,86 @@ package com.codedulan.dms.repository;
 import com.codedulan.dms.entity.Patient;
 import com.codedulan.dms.entity.Prescription;
 import com.codedulan.dms.entity.PrescriptionItem;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface PrescriptionRepository extends JpaRepository<Prescription, Long> {
+    // List reads load items, batches and medicines with the prescriptions instead of lazily per row
+    @Override
+    @EntityGraph(Prescription.DETAILS_GRAPH)
+    List<Prescription> findAll();
+
+    @EntityGraph(Prescription.DETAILS_GRAPH)
     List<Prescription> findByPatient(Patient patient);
 
+    @EntityGraph(Prescription.DETAILS_GRAPH)
     List<Prescription> findByPatientAndIssueDateBetweenOrderByIssueDateDesc(
             Patient patient, LocalDateTime start, LocalDateTime end);
 
+    @EntityGraph(Prescription.DETAILS_GRAPH)
+    List<Prescription> findByPatientPatientId(Long patientId);
+
+    @EntityGraph(Prescription.DETAILS_GRAPH)
+    List<Prescription> findByPatientPatientIdAndIssueDateBetweenOrderByIssueDateDesc(
+            Long patientId, LocalDateTime start, LocalDateTime end);
+
+    @EntityGraph(Prescription.DETAILS_GRAPH)
     List<Prescription> findByIssueDateBetweenOrderByIssueDateDesc(
             LocalDateTime start, LocalDateTime end);
 
+    // Patient timeline, newest first: page ids by (issueDate, id) from idx_prescription_patient_issue_date,
+    // then load items only for that page. Pass a Pageable of size + 1 to learn whether another page exists.
+    @Query("SELECT p.id FROM Prescription p WHERE p.patient.patientId = :patientId " +
+            "ORDER BY p.issueDate DESC, p.id DESC")
+    List<Long> findTimelineIds(@Param("patientId") Long patientId, Pageable pageable);
+
+    @Query("SELECT p.id FROM Prescription p WHERE p.patient.patientId = :patientId " +
+            "AND (p.issueDate, p.id) < (:afterIssueDate, :afterId) " +
+            "ORDER BY p.issueDate DESC, p.id DESC")
+    List<Long> findTimelineIdsAfter(@Param("patientId") Long patientId,
+                                    @Param("afterIssueDate") LocalDateTime afterIssueDate,
+                                    @Param("afterId") Long afterId,
+                                    Pageable pageable);
 
+    @EntityGraph(Prescription.DETAILS_GRAPH)
+    List<Prescription> findByIdInOrderByIssueDateDescIdDesc(Collection<Long> ids);
 
+    // Streams a large range for export; ordered by id within the date so each prescription's item rows stay together.
+    // Must be consumed inside a read-only transaction, which is also what makes the fetch size take effect on Postgres.
+    @EntityGraph(Prescription.DETAILS_GRAPH)
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT p FROM Prescription p WHERE p.issueDate BETWEEN :start AND :end ORDER BY p.issueDate, p.id")
+    Stream<Prescription> streamByIssueDateBetween(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
 
+    // Units dispensed per medicine per issue day since :from, ordered by medicine then day.
+    // Items saved before dispensed_quantity existed fall back to one dose a day for the days supplied.
+    @Query(value = "SELECT ii.medicine_id, CAST(p.issue_date AS date) AS day, " +
+            "SUM(COALESCE(pi.dispensed_quantity, pi.quantity * COALESCE(pi.days_supply, 1))) AS units " +
+            "FROM prescription_items pi " +
+            "JOIN prescriptions p ON p.id = pi.prescription_id " +
+            "JOIN inventory_items ii ON ii.id = pi.inventory_item_id " +
+            "WHERE p.issue_date >= :from " +
+            "GROUP BY ii.medicine_id, CAST(p.issue_date AS date) " +
+            "ORDER BY 1, 2", nativeQuery = true)
+    List<Object[]> findDailyDispensedSince(@Param("from") LocalDateTime from);
 
      // Count prescriptions by disease for a date range
    @Query("SELECT p.disease, COUNT(p) as count " +
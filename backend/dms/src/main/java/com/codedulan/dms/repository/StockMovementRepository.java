@@ -0,0 +1,39 @@
+package com.codedulan.dms.repository;
+
+import com.codedulan.dms.entity.StockMovement;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface StockMovementRepository extends JpaRepository<StockMovement, Long> {
+    boolean existsByIdIsNotNull();
+
+    List<StockMovement> findByInventoryItemIdOrderByOccurredAtAscIdAsc(Long inventoryItemId);
+
+    // Range scan on (medicine_id, occurred_at); bounded by the gap since the nearest snapshot
+    @Query("SELECT COALESCE(SUM(m.quantity), 0) FROM StockMovement m " +
+            "WHERE m.medicineId = :medicineId AND m.occurredAt > :from AND m.occurredAt <= :to")
+    long sumForMedicineBetween(@Param("medicineId") Long medicineId,
+                               @Param("from") LocalDateTime from,
+                               @Param("to") LocalDateTime to);
+
+    @Query("SELECT COALESCE(SUM(m.quantity), 0) FROM StockMovement m WHERE m.inventoryItemId = :inventoryItemId")
+    long sumForInventoryItem(@Param("inventoryItemId") Long inventoryItemId);
+
+    // medicine id and net movement for every medicine that moved in the window
+    @Query("SELECT m.medicineId, SUM(m.quantity) FROM StockMovement m " +
+            "WHERE m.occurredAt > :from AND m.occurredAt <= :to GROUP BY m.medicineId")
+    List<Object[]> sumByMedicineBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    // batch id, medicine id and ledger balance of expired batches that still hold stock in the ledger
+    @Query("SELECT m.inventoryItemId, m.medicineId, SUM(m.quantity) FROM StockMovement m " +
+            "WHERE m.inventoryItemId IN (SELECT i.id FROM InventoryItem i WHERE i.expiryDate < :today) " +
+            "GROUP BY m.inventoryItemId, m.medicineId HAVING SUM(m.quantity) > 0")
+    List<Object[]> findExpiredBalances(@Param("today") LocalDate today);
+}
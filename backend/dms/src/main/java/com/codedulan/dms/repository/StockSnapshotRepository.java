@@ -0,0 +1,21 @@
+package com.codedulan.dms.repository;
+
+import com.codedulan.dms.entity.StockSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StockSnapshotRepository extends JpaRepository<StockSnapshot, Long> {
+    // one index probe on (medicine_id, taken_at)
+    Optional<StockSnapshot> findFirstByMedicineIdAndTakenAtLessThanEqualOrderByTakenAtDesc(Long medicineId, LocalDateTime at);
+
+    @Query("SELECT MAX(s.takenAt) FROM StockSnapshot s")
+    Optional<LocalDateTime> findLatestTakenAt();
+
+    List<StockSnapshot> findByTakenAt(LocalDateTime takenAt);
+}
@@ -0,0 +1,151 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.QueueDelta;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Fans queue deltas out to SSE subscribers grouped by date. Idle subscribers hold no thread;
+// each one has a small bounded buffer and is dropped (and expected to reconnect and reload
+// the daily queue) if it falls further behind than that. Idle connections get a heartbeat comment.
+@Component
+@Slf4j
+public class AppointmentQueueStream {
+
+    private static final long EMITTER_TIMEOUT_MS = 30 * 60 * 1000L;
+    private static final int MAX_PENDING_EVENTS = 64;
+    // below the idle timeout of common proxies and load balancers
+    private static final long HEARTBEAT_INTERVAL_MS = 20 * 1000L;
+
+    private final Map<LocalDate, Set<Subscriber>> subscribersByDate = new ConcurrentHashMap<>();
+    private final ExecutorService sender = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "queue-sse-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SseEmitter subscribe(LocalDate date) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        Subscriber subscriber = new Subscriber(emitter);
+        subscribersByDate.compute(date, (d, subscribers) -> {
+            Set<Subscriber> set = subscribers != null ? subscribers : ConcurrentHashMap.<Subscriber>newKeySet();
+            set.add(subscriber);
+            return set;
+        });
+
+        emitter.onCompletion(() -> unsubscribe(date, subscriber));
+        emitter.onTimeout(() -> unsubscribe(date, subscriber));
+        emitter.onError(e -> unsubscribe(date, subscriber));
+
+        log.debug("New queue subscriber for date: {}", date);
+        return emitter;
+    }
+
+    // runs after the appointment change has committed, or straight away outside a transaction
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQueueDelta(QueueDelta delta) {
+        LocalDate date = delta.getAppointment().getDate();
+        publish(date, delta);
+
+        if (delta.getPreviousDate() != null && !delta.getPreviousDate().equals(date)) {
+            publish(delta.getPreviousDate(), delta);
+        }
+    }
+
+    private void publish(LocalDate date, QueueDelta delta) {
+        Set<Subscriber> subscribers = subscribersByDate.get(date);
+        if (subscribers == null) {
+            return;
+        }
+
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.pending.offer(delta)) {
+                log.warn("Dropping slow queue subscriber for date: {}", date);
+                unsubscribe(date, subscriber);
+                subscriber.emitter.complete();
+                continue;
+            }
+            scheduleDrain(date, subscriber);
+        }
+    }
+
+    private void scheduleDrain(LocalDate date, Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            sender.execute(() -> drain(date, subscriber, false));
+        }
+    }
+
+    // A comment line keeps quiet connections from being closed by idle proxies. Subscribers that are
+    // being drained right now are already sending, so they are skipped.
+    @Scheduled(fixedRate = HEARTBEAT_INTERVAL_MS)
+    public void sendHeartbeats() {
+        subscribersByDate.forEach((date, subscribers) -> {
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.draining.compareAndSet(false, true)) {
+                    sender.execute(() -> drain(date, subscriber, true));
+                }
+            }
+        });
+    }
+
+    private void drain(LocalDate date, Subscriber subscriber, boolean heartbeat) {
+        try {
+            if (heartbeat && subscriber.pending.isEmpty()) {
+                subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+            }
+            QueueDelta delta;
+            while ((delta = subscriber.pending.poll()) != null) {
+                subscriber.emitter.send(SseEmitter.event()
+                        .name(delta.getType().name())
+                        .data(delta));
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Queue subscriber for date {} went away: {}", date, e.getMessage());
+            unsubscribe(date, subscriber);
+            return;
+        } finally {
+            subscriber.draining.set(false);
+        }
+
+        // an event may have arrived between the last poll and releasing the flag
+        if (!subscriber.pending.isEmpty()) {
+            scheduleDrain(date, subscriber);
+        }
+    }
+
+    private void unsubscribe(LocalDate date, Subscriber subscriber) {
+        subscribersByDate.computeIfPresent(date, (d, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final Queue<QueueDelta> pending = new ArrayBlockingQueue<>(MAX_PENDING_EVENTS);
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+}
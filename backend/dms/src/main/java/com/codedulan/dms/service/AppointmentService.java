@@ -1,6 +1,11 @@
 package com.codedulan.dms.service;
 
+import com.codedulan.dms.dto.AppointmentDTO;
+import com.codedulan.dms.dto.AppointmentPage;
 import com.codedulan.dms.dto.AppointmentRequest;
+import com.codedulan.dms.dto.AuthenticatedUser;
+import com.codedulan.dms.dto.DayAvailabilityDTO;
+import com.codedulan.dms.dto.QueueDelta;
 import com.codedulan.dms.entity.Appointment;
 import com.codedulan.dms.entity.Patient;
 import com.codedulan.dms.exception.ResourceNotFoundException;
@@ -9,14 +14,23 @@ import com.codedulan.dms.repository.AppointmentRepository;
 import com.codedulan.dms.repository.PatientRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -24,34 +38,39 @@ import java.util.List;
 public class AppointmentService {
 
     private final AppointmentRepository appointmentRepository;
-    private final JWTUtils jwtUtils;
     private final PatientRepository patientRepository;
+    private final AppointmentSlotCache slotCache;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public Appointment createAppointmentFromToken(AppointmentRequest request, String token) {
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    @Transactional
+    public Appointment createAppointmentForCurrentPatient(AppointmentRequest request, AuthenticatedUser user) {
         try {
-            log.info("Creating appointment from token for date: {}, time: {}", request.getDate(), request.getTime());
+            log.info("Creating appointment for current patient for date: {}, time: {}", request.getDate(), request.getTime());
 
-            String email = jwtUtils.extractUsername(token);
-            Patient patient = patientRepository.findByEmail(email)
+            String email = user.getEmail();
+            Patient patient = patientRepository.findById(user.requirePatientId())
                     .orElseThrow(() -> {
                         log.error("Patient not found for email: {}", email);
-
                         return new ResourceNotFoundException("Patient not found for the provided token");
                     });
 
             validateAppointmentTime(request.getTime());
             validateAppointmentType(request.getAppointmentType());
 
-            if (appointmentRepository.existsByDateAndTime(request.getDate(), request.getTime())) {
+            // Cheap in-memory rejection; the unique (date, time) constraint is what actually decides the race
+            if (slotCache.isBooked(request.getDate(), request.getTime())) {
                 String errorMessage = "Time slot already booked for " + request.getDate() + " at " + request.getTime();
                 log.error("BusinessLogicException: {}", errorMessage);
                 throw new BusinessLogicException("Time slot already booked for " + request.getDate() + " at " + request.getTime());
             }
 
-            // Calculate appropriate queue number based on time
-            Integer queueNumber = calculateQueueNumberBasedOnTime(request.getDate(), request.getTime());
+            // Queue number is the position in time order; later appointments are shifted in one statement below
+            Integer queueNumber = queuePositionFor(request.getDate(), request.getTime());
 
-            Appointment appointment = appointmentRepository.save(
+            Appointment appointment = reserveSlot(
                     Appointment.builder()
                             .queueNumber(queueNumber)
                             .date(request.getDate())
@@ -62,6 +81,9 @@ public class AppointmentService {
                             .patient(patient)
                             .build()
             );
+            appointmentRepository.renumberQueue(appointment.getDate());
+            slotCache.markBooked(appointment.getDate(), appointment.getTime());
+            publishDelta(QueueDelta.Type.CREATED, appointment);
 
             log.info("Successfully created appointment with ID: {} for patient: {}", appointment.getId(), email);
             return appointment;
@@ -76,6 +98,7 @@ public class AppointmentService {
     }
 
     // method for dispensers to create appointments for patients
+    @Transactional
     public Appointment createAppointmentForPatient(Long patientId, AppointmentRequest request) {
         try {
             log.info("Creating appointment for patient ID: {} on date: {}", patientId, request.getDate());
@@ -89,16 +112,16 @@ public class AppointmentService {
             validateAppointmentTime(request.getTime());
             validateAppointmentType(request.getAppointmentType());
 
-            if (appointmentRepository.existsByDateAndTime(request.getDate(), request.getTime())) {
+            if (slotCache.isBooked(request.getDate(), request.getTime())) {
                 log.warn("Time slot already booked for patient ID: {}, date: {}, time: {}",
                         patientId, request.getDate(), request.getTime());
                 throw new BusinessLogicException("Time slot already booked for " + request.getDate() + " at " + request.getTime());
             }
 
-            // calculate appropriate queue number based on time
-            Integer queueNumber = calculateQueueNumberBasedOnTime(request.getDate(), request.getTime());
+            // queue number is the position in time order; later appointments are shifted in one statement below
+            Integer queueNumber = queuePositionFor(request.getDate(), request.getTime());
 
-            Appointment appointment = appointmentRepository.save(
+            Appointment appointment = reserveSlot(
                     Appointment.builder()
                             .queueNumber(queueNumber)
                             .date(request.getDate())
@@ -109,6 +132,9 @@ public class AppointmentService {
                             .patient(patient)
                             .build()
             );
+            appointmentRepository.renumberQueue(appointment.getDate());
+            slotCache.markBooked(appointment.getDate(), appointment.getTime());
+            publishDelta(QueueDelta.Type.CREATED, appointment);
 
             log.info("Successfully created appointment with ID: {} for patient ID: {}", appointment.getId(), patientId);
             return appointment;
@@ -122,18 +148,14 @@ public class AppointmentService {
         }
     }
 
-    public List<Appointment> getPatientAppointments(LocalDate date, String token) {
+    public List<AppointmentDTO> getPatientAppointments(LocalDate date, AuthenticatedUser user) {
         try {
             log.debug("Fetching patient appointments for date: {}", date);
 
-            String email = jwtUtils.extractUsername(token);
-            Patient patient = patientRepository.findByEmail(email)
-                    .orElseThrow(() -> {
-                        log.error("Patient not found for email: {}", email);
-                        return new ResourceNotFoundException("Patient not found for the provided token");
-                    });
+            String email = user.getEmail();
+            Long patientId = user.requirePatientId();
 
-            List<Appointment> appointments = appointmentRepository.findByDateAndPatient(date, patient);
+            List<AppointmentDTO> appointments = appointmentRepository.findSummariesByDateAndPatientId(date, patientId);
             log.info("Found {} appointments for patient: {} on date: {}", appointments.size(), email, date);
 
             return appointments;
@@ -147,16 +169,13 @@ public class AppointmentService {
         }
     }
 
-    public Appointment updatePatientAppointment(Long appointmentId, AppointmentRequest request, String token) {
+    @Transactional
+    public Appointment updatePatientAppointment(Long appointmentId, AppointmentRequest request, AuthenticatedUser user) {
         try {
             log.info("Updating appointment ID: {} to date: {}, time: {}", appointmentId, request.getDate(), request.getTime());
 
-            String email = jwtUtils.extractUsername(token);
-            Patient patient = patientRepository.findByEmail(email)
-                    .orElseThrow(() -> {
-                        log.error("Patient not found for email: {}", email);
-                        return new ResourceNotFoundException("Patient not found for the provided token");
-                    });
+            String email = user.getEmail();
+            Long patientId = user.requirePatientId();
 
             Appointment appointment = appointmentRepository.findById(appointmentId)
                     .orElseThrow(() -> {
@@ -165,7 +184,7 @@ public class AppointmentService {
                     });
 
             // Check if the appointment belongs to the patient
-            if (!appointment.getPatient().getEmail().equals(email)) {
+            if (!appointment.getPatient().getPatientId().equals(patientId)) {
                 log.warn("Unauthorized update attempt - Appointment ID: {} does not belong to patient: {}",
                         appointmentId, email);
                 throw new BusinessLogicException("You can only update your own appointments");
@@ -184,27 +203,36 @@ public class AppointmentService {
                             request.getDate(), request.getTime());
                     throw new BusinessLogicException("Time slot already booked for " + request.getDate() + " at " + request.getTime());
                 }
-
-                // If changing the date or time, recalculate queue number
-                if (!appointment.getDate().equals(request.getDate()) ||
-                        !appointment.getTime().equals(request.getTime())) {
-                    Integer newQueueNumber = calculateQueueNumberBasedOnTime(request.getDate(), request.getTime());
-                    appointment.setQueueNumber(newQueueNumber);
-
-                    log.info("Queue number updated for appointment ID: {} - new queue number: {}",
-                            appointmentId, newQueueNumber);
-
-                    reorganizeQueueNumbers(request.getDate());
-                }
             }
 
+            LocalDate previousDate = appointment.getDate();
+            LocalTime previousTime = appointment.getTime();
+
             // Update appointment details
             appointment.setDate(request.getDate());
             appointment.setTime(request.getTime());
             appointment.setAppointmentType(request.getAppointmentType());
             appointment.setNotes(request.getNotes());
 
-            Appointment updatedAppointment = appointmentRepository.save(appointment);
+            Appointment updatedAppointment = reserveSlot(appointment);
+            if (!previousDate.equals(updatedAppointment.getDate()) || !previousTime.equals(updatedAppointment.getTime())) {
+                updatedAppointment.setQueueNumber(queuePositionFor(updatedAppointment.getDate(), updatedAppointment.getTime()));
+                appointmentRepository.renumberQueue(updatedAppointment.getDate());
+                if (!previousDate.equals(updatedAppointment.getDate())) {
+                    appointmentRepository.renumberQueue(previousDate);
+                }
+
+                slotCache.markFree(previousDate, previousTime);
+                slotCache.markBooked(updatedAppointment.getDate(), updatedAppointment.getTime());
+                eventPublisher.publishEvent(QueueDelta.builder()
+                        .type(QueueDelta.Type.MOVED)
+                        .appointment(AppointmentDTO.fromEntity(updatedAppointment))
+                        .previousDate(previousDate)
+                        .previousTime(previousTime)
+                        .build());
+                log.info("Queue number updated for appointment ID: {} - new queue number: {}",
+                        appointmentId, updatedAppointment.getQueueNumber());
+            }
             log.info("Successfully updated appointment ID: {}", appointmentId);
 
             return updatedAppointment;
@@ -218,18 +246,20 @@ public class AppointmentService {
         }
     }
 
-    public void deletePatientAppointment(Long appointmentId, String token) {
+    @Transactional
+    public void deletePatientAppointment(Long appointmentId, AuthenticatedUser user) {
         try {
             log.info("Deleting appointment ID: {}", appointmentId);
 
-            String email = jwtUtils.extractUsername(token);
+            String email = user.getEmail();
+            Long patientId = user.requirePatientId();
             Appointment appointment = appointmentRepository.findById(appointmentId)
                     .orElseThrow(() -> {
                         log.error("Appointment not found with ID: {}", appointmentId);
                         return new ResourceNotFoundException("Appointment not found with ID: " + appointmentId);
                     });
 
-            if (!appointment.getPatient().getEmail().equals(email)) {
+            if (!appointment.getPatient().getPatientId().equals(patientId)) {
                 log.warn("Unauthorized delete attempt - Appointment ID: {} does not belong to patient: {}",
                         appointmentId, email);
                 throw new BusinessLogicException("You can only delete your own appointments");
@@ -237,11 +267,13 @@ public class AppointmentService {
 
             LocalDate appointmentDate = appointment.getDate();
             appointmentRepository.delete(appointment);
+            slotCache.markFree(appointmentDate, appointment.getTime());
+            publishDelta(QueueDelta.Type.REMOVED, appointment);
 
             log.info("Successfully deleted appointment ID: {} for patient: {}", appointmentId, email);
 
-            // Reorganize the queue numbers
-            reorganizeQueueNumbers(appointmentDate);
+            // Close the gap left in the queue
+            appointmentRepository.renumberQueue(appointmentDate);
             log.info("Queue numbers reorganized for date: {}", appointmentDate);
 
         } catch (ResourceNotFoundException | BusinessLogicException e) {
@@ -253,30 +285,60 @@ public class AppointmentService {
         }
     }
 
-    public List<Appointment> getAllAppointments() {
+    // Keyset-paginated history for the dispenser dashboard, newest first.
+    // The cursor is an opaque token for the (date, time, id) of the last row on the previous page.
+    // Without a cursor or size every matching row is returned, as callers written before paging expect.
+    public AppointmentPage getAllAppointments(String cursor, Integer size, String status, String type, Long patientId) {
         try {
-            log.debug("Fetching all appointments");
-            List<Appointment> appointments = appointmentRepository.findAll();
-            log.info("Found {} total appointments", appointments.size());
-            return appointments;
+            String statusFilter = status != null ? status.toUpperCase() : null;
+            String typeFilter = type != null ? type.toUpperCase() : null;
+            if ((cursor == null || cursor.isBlank()) && size == null) {
+                List<AppointmentDTO> rows = appointmentRepository.findSummaryPage(statusFilter, typeFilter, patientId,
+                        Pageable.unpaged());
+                log.info("Found {} total appointments", rows.size());
+                return new AppointmentPage(rows, null);
+            }
+
+            int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+            Pageable window = PageRequest.ofSize(pageSize + 1);
+
+            log.debug("Fetching appointments page - cursor: {}, size: {}, status: {}, type: {}, patient: {}",
+                    cursor, pageSize, statusFilter, typeFilter, patientId);
+
+            List<AppointmentDTO> rows;
+            if (cursor == null || cursor.isBlank()) {
+                rows = appointmentRepository.findSummaryPage(statusFilter, typeFilter, patientId, window);
+            } else {
+                String[] position = decodeCursor(cursor);
+                rows = appointmentRepository.findSummaryPageAfter(statusFilter, typeFilter, patientId,
+                        LocalDate.parse(position[0]), LocalTime.parse(position[1]), Long.valueOf(position[2]), window);
+            }
+
+            String nextCursor = null;
+            if (rows.size() > pageSize) {
+                rows = rows.subList(0, pageSize);
+                nextCursor = encodeCursor(rows.get(pageSize - 1));
+            }
+
+            log.info("Found {} appointments on page, more: {}", rows.size(), nextCursor != null);
+            return new AppointmentPage(new ArrayList<>(rows), nextCursor);
+        } catch (BusinessLogicException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error fetching all appointments: {}", e.getMessage(), e);
             throw new BusinessLogicException("Failed to fetch all appointments");
         }
     }
 
-    public List<Appointment> getPatientAppointmentsInRange(LocalDate startDate, LocalDate endDate, String token) {
+    public List<AppointmentDTO> getPatientAppointmentsInRange(LocalDate startDate, LocalDate endDate, AuthenticatedUser user) {
         try {
             log.debug("Fetching patient appointments in range: {} to {}", startDate, endDate);
 
-            String email = jwtUtils.extractUsername(token);
-            Patient patient = patientRepository.findByEmail(email)
-                    .orElseThrow(() -> {
-                        log.error("Patient not found for email: {}", email);
-                        return new ResourceNotFoundException("Patient not found for the provided token");
-                    });
+            String email = user.getEmail();
+            Long patientId = user.requirePatientId();
 
-            List<Appointment> appointments = appointmentRepository.findByDateBetweenAndPatient(startDate, endDate, patient);
+            List<AppointmentDTO> appointments = appointmentRepository.findSummariesByDateBetweenAndPatientId(
+                    startDate, endDate, patientId);
             log.info("Found {} appointments for patient: {} in date range {} to {}",
                     appointments.size(), email, startDate, endDate);
 
@@ -291,7 +353,7 @@ public class AppointmentService {
         }
     }
 
-    public List<Appointment> getAllAppointmentsInRange(LocalDate startDate, LocalDate endDate) {
+    public List<AppointmentDTO> getAllAppointmentsInRange(LocalDate startDate, LocalDate endDate) {
         try {
             if (startDate == null) {
                 startDate = LocalDate.now().withDayOfMonth(1);
@@ -301,7 +363,7 @@ public class AppointmentService {
             }
 
             log.debug("Fetching all appointments in range: {} to {}", startDate, endDate);
-            List<Appointment> appointments = appointmentRepository.findByDateBetween(startDate, endDate);
+            List<AppointmentDTO> appointments = appointmentRepository.findSummariesByDateBetween(startDate, endDate);
             log.info("Found {} appointments in date range {} to {}", appointments.size(), startDate, endDate);
 
             return appointments;
@@ -317,19 +379,13 @@ public class AppointmentService {
         try {
             log.debug("Fetching available time slots for date: {}", date);
 
-            // Generate all possible time slots from 9:00 to 14:55 in 5-minute intervals
-            List<LocalTime> allTimeSlots = generateAllTimeSlots();
-
-            // Get booked time slots for the date
-            List<LocalTime> bookedTimeSlots = appointmentRepository.findTimesByDate(date);
-
-            // Remove booked time slots from all time slots
-            allTimeSlots.removeAll(bookedTimeSlots);
+            // Served from the per-date bitmap; the database is only read the first time a date is seen
+            List<LocalTime> availableSlots = slotCache.getAvailableSlots(date);
 
             log.info("Found {} available time slots for date: {} (out of {} total slots)",
-                    allTimeSlots.size(), date, generateAllTimeSlots().size());
+                    availableSlots.size(), date, AppointmentSlotCache.SLOT_COUNT);
 
-            return allTimeSlots;
+            return availableSlots;
 
         } catch (Exception e) {
             log.error("Error fetching available time slots for date {}: {}", date, e.getMessage(), e);
@@ -337,10 +393,21 @@ public class AppointmentService {
         }
     }
 
-    public List<Appointment> getAppointmentsByDate(LocalDate date) {
+    // booked and free slot counts for every day of a month, for the booking calendar
+    public List<DayAvailabilityDTO> getMonthAvailability(YearMonth month) {
+        try {
+            log.debug("Fetching slot availability for month: {}", month);
+            return slotCache.getMonthAvailability(month);
+        } catch (Exception e) {
+            log.error("Error fetching slot availability for month {}: {}", month, e.getMessage(), e);
+            throw new BusinessLogicException("Failed to fetch availability for month: " + month);
+        }
+    }
+
+    public List<AppointmentDTO> getAppointmentsByDate(LocalDate date) {
         try {
             log.debug("Fetching appointments by date: {}", date);
-            List<Appointment> appointments = appointmentRepository.findByDateOrderByTimeAsc(date);
+            List<AppointmentDTO> appointments = appointmentRepository.findSummariesByDate(date);
             log.info("Found {} appointments for date: {}", appointments.size(), date);
             return appointments;
         } catch (Exception e) {
@@ -364,6 +431,7 @@ public class AppointmentService {
             appointment.setAppointmentStatus(status);
 
             Appointment updatedAppointment = appointmentRepository.save(appointment);
+            publishDelta(QueueDelta.Type.STATUS_CHANGED, updatedAppointment);
             log.info("Successfully updated appointment ID: {} status to: {}", appointmentId, status);
 
             return updatedAppointment;
@@ -379,36 +447,63 @@ public class AppointmentService {
 
     // method to cancel all appointments for a specific date
     @Transactional
-    public void cancelAllAppointmentsByDate(LocalDate date) {
+    public List<Long> cancelAllAppointmentsByDate(LocalDate date) {
+        return cancelAppointmentsInRange(date, date, null);
+    }
+
+    // Cancels a whole range with one UPDATE and returns the affected IDs so patients can be
+    // notified in one batch. Appointments that were already cancelled are left out.
+    @Transactional
+    public List<Long> cancelAppointmentsInRange(LocalDate startDate, LocalDate endDate, List<String> appointmentTypes) {
         try {
-            log.info("Cancelling all appointments for date: {}", date);
+            log.info("Cancelling appointments from {} to {} for types: {}", startDate, endDate, appointmentTypes);
 
-            List<Appointment> appointments = appointmentRepository.findByDateOrderByTimeAsc(date);
+            if (endDate.isBefore(startDate)) {
+                throw new BusinessLogicException("End date cannot be before start date");
+            }
+
+            List<Long> cancelledIds;
+            if (appointmentTypes == null || appointmentTypes.isEmpty()) {
+                cancelledIds = appointmentRepository.cancelInRange(startDate, endDate);
+            } else {
+                appointmentTypes.forEach(this::validateAppointmentType);
+                List<String> types = appointmentTypes.stream()
+                        .map(String::toUpperCase)
+                        .distinct()
+                        .collect(Collectors.toList());
+                cancelledIds = appointmentRepository.cancelInRangeByTypes(startDate, endDate, types);
+            }
 
-            for (Appointment appointment : appointments) {
-                appointment.setAppointmentStatus("CANCELLED");
-                appointmentRepository.save(appointment);
+            if (!cancelledIds.isEmpty()) {
+                for (AppointmentDTO cancelled : appointmentRepository.findSummariesByIdIn(cancelledIds)) {
+                    eventPublisher.publishEvent(QueueDelta.builder()
+                            .type(QueueDelta.Type.STATUS_CHANGED)
+                            .appointment(cancelled)
+                            .build());
+                }
             }
 
-            log.info("Successfully cancelled {} appointments for date: {}", appointments.size(), date);
+            log.info("Successfully cancelled {} appointments from {} to {}", cancelledIds.size(), startDate, endDate);
+            return cancelledIds;
 
+        } catch (BusinessLogicException e) {
+            log.error("Failed to cancel appointments from {} to {}: {}", startDate, endDate, e.getMessage());
+            throw e;
         } catch (Exception e) {
-            log.error("Error cancelling appointments for date {}: {}", date, e.getMessage(), e);
-            throw new BusinessLogicException("Failed to cancel appointments for date: " + date);
+            log.error("Error cancelling appointments from {} to {}: {}", startDate, endDate, e.getMessage(), e);
+            throw new BusinessLogicException("Failed to cancel appointments from " + startDate + " to " + endDate);
         }
     }
 
-    private List<LocalTime> generateAllTimeSlots() {
-        List<LocalTime> timeSlots = new ArrayList<>();
-        LocalTime start = LocalTime.of(9, 0);
-        LocalTime end = LocalTime.of(15, 0);
-
-        while (start.isBefore(end)) {
-            timeSlots.add(start);
-            start = start.plusMinutes(5);
+    // Insert or move an appointment, letting the unique (date, time) constraint reject a taken slot.
+    // Flushing here surfaces the violation inside this call rather than at commit.
+    private Appointment reserveSlot(Appointment appointment) {
+        try {
+            return appointmentRepository.saveAndFlush(appointment);
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Slot conflict on insert - Date: {}, Time: {}", appointment.getDate(), appointment.getTime());
+            throw new BusinessLogicException("Time slot already booked for " + appointment.getDate() + " at " + appointment.getTime());
         }
-
-        return timeSlots;
     }
 
     private void validateAppointmentTime(LocalTime time) {
@@ -434,98 +529,59 @@ public class AppointmentService {
         }
     }
 
-    private Integer calculateQueueNumberBasedOnTime(LocalDate date, LocalTime time) {
-        try {
-            log.debug("Calculating queue number for date: {} time: {}", date, time);
-
-            // Get all existing appointments for the date
-            List<Appointment> existingAppointments = appointmentRepository.findByDateOrderByTimeAsc(date);
-
-            // Find the correct position for this time
-            int position = 1;
-            for (Appointment existing : existingAppointments) {
-                if (existing.getTime().isBefore(time)) {
-                    position++;
-                } else {
-                    existing.setQueueNumber(existing.getQueueNumber() + 1);
-                    appointmentRepository.save(existing);
-                }
-            }
-
-            log.debug("Calculated queue number: {} for date: {} time: {}", position, date, time);
-            return position;
+    // delivered to live queue subscribers once the surrounding transaction commits
+    private void publishDelta(QueueDelta.Type type, Appointment appointment) {
+        eventPublisher.publishEvent(QueueDelta.builder()
+                .type(type)
+                .appointment(AppointmentDTO.fromEntity(appointment))
+                .build());
+    }
 
-        } catch (Exception e) {
-            log.error("Error calculating queue number for date {} time {}: {}", date, time, e.getMessage(), e);
-            throw new BusinessLogicException("Failed to calculate queue number");
-        }
+    private String encodeCursor(AppointmentDTO last) {
+        String position = last.getDate() + "|" + last.getTime() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
     }
 
-    @Transactional
-    public void reorganizeQueueNumbers(LocalDate date) {
+    private String[] decodeCursor(String cursor) {
         try {
-            log.debug("Reorganizing queue numbers for date: {}", date);
-
-            List<Appointment> appointments = appointmentRepository.findByDateOrderByTimeAsc(date);
-
-            // Reassign queue numbers based on time order
-            int queueNumber = 1;
-            for (Appointment appointment : appointments) {
-                appointment.setQueueNumber(queueNumber++);
-                appointmentRepository.save(appointment);
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            if (position.length != 3) {
+                throw new IllegalArgumentException("Expected 3 cursor fields");
             }
-
-            log.debug("Successfully reorganized {} queue numbers for date: {}", appointments.size(), date);
-
-        } catch (Exception e) {
-            log.error("Error reorganizing queue numbers for date {}: {}", date, e.getMessage(), e);
-            throw new BusinessLogicException("Failed to reorganize queue numbers");
+            LocalDate.parse(position[0]);
+            LocalTime.parse(position[1]);
+            Long.parseLong(position[2]);
+            return position;
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            log.warn("Rejected malformed appointment cursor: {}", cursor);
+            throw new BusinessLogicException("Invalid page cursor");
         }
     }
 
-    // method to ensure appointments are returned with correct queue numbers
-    public List<Appointment> getPatientAppointmentsByTime(LocalDate startDate, LocalDate endDate, String token) {
+    // 1-based position of a time within its day; the slot itself is excluded as it is strictly "before"
+    private Integer queuePositionFor(LocalDate date, LocalTime time) {
+        return (int) appointmentRepository.countByDateAndTimeBefore(date, time) + 1;
+    }
+
+    // queue positions are computed by the database in one windowed query; nothing is written back
+    @Transactional(readOnly = true)
+    public List<AppointmentDTO> getPatientAppointmentsByTime(LocalDate startDate, LocalDate endDate, AuthenticatedUser user) {
         try {
             log.debug("Fetching patient appointments by time for date range: {} to {}", startDate, endDate);
 
-            String email = jwtUtils.extractUsername(token);
-            Patient patient = patientRepository.findByEmail(email)
-                    .orElseThrow(() -> {
-                        log.error("Patient not found for email: {}", email);
-                        return new ResourceNotFoundException("Patient not found for the provided token");
-                    });
+            String email = user.getEmail();
+            Long patientId = user.requirePatientId();
 
             // Default date range
             if (startDate == null) startDate = LocalDate.now();
             if (endDate == null) endDate = startDate.plusDays(30);
 
-            // Get patient's appointments in date range
-            List<Appointment> appointments = appointmentRepository.findByDateBetweenAndPatient(startDate, endDate, patient);
-
-            // For each appointment, verify its queue number is correct
-            for (Appointment appt : appointments) {
-                // Get all appointments for this date sorted by time
-                List<Appointment> allApptsForDate = appointmentRepository.findByDateOrderByTimeAsc(appt.getDate());
-
-                // Find this appointment's position in the time-sorted list
-                int correctPosition = 1;
-                for (Appointment other : allApptsForDate) {
-                    if (other.getId().equals(appt.getId())) {
-                        break;
-                    }
-                    correctPosition++;
-                }
-
-                // Update if incorrect
-                if (appt.getQueueNumber() != correctPosition) {
-                    log.info("Correcting queue number for appointment ID: {} from {} to {}",
-                            appt.getId(), appt.getQueueNumber(), correctPosition);
-                    appt.setQueueNumber(correctPosition);
-                    appointmentRepository.save(appt);
-                }
-            }
+            List<AppointmentDTO> appointments = appointmentRepository
+                    .findPatientQueuePositions(patientId, startDate, endDate).stream()
+                    .map(AppointmentDTO::fromView)
+                    .collect(Collectors.toList());
 
-            log.info("Found {} appointments for patient: {} with corrected queue numbers", appointments.size(), email);
+            log.info("Found {} appointments for patient: {} with queue positions", appointments.size(), email);
             return appointments;
 
         } catch (ResourceNotFoundException e) {
@@ -536,4 +592,4 @@ public class AppointmentService {
             throw new BusinessLogicException("Failed to fetch appointments with correct queue numbers");
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,192 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.DayAvailabilityDTO;
+import com.codedulan.dms.repository.AppointmentRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Keeps one booked-slot bitmap per date so available-slots can be served without a query,
+// plus per-month booked/free counts for the calendar heatmap.
+// Both are loaded from the database on first use and kept in step by AppointmentService once its changes commit.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AppointmentSlotCache {
+
+    static final LocalTime FIRST_SLOT = LocalTime.of(9, 0);
+    static final int SLOT_MINUTES = 5;
+    static final int SLOT_COUNT = 72; // 9:00 to 14:55
+
+    private final AppointmentRepository appointmentRepository;
+
+    private final Map<LocalDate, DaySlots> slotsByDate = new ConcurrentHashMap<>();
+    private final Map<YearMonth, List<DayAvailabilityDTO>> availabilityByMonth = new ConcurrentHashMap<>();
+
+    public List<LocalTime> getAvailableSlots(LocalDate date) {
+        return slotsFor(date).freeTimes();
+    }
+
+    // one GROUP BY query per month, then served from memory until a booking in that month changes
+    public List<DayAvailabilityDTO> getMonthAvailability(YearMonth month) {
+        return availabilityByMonth.computeIfAbsent(month, this::loadMonthAvailability);
+    }
+
+    public boolean isBooked(LocalDate date, LocalTime time) {
+        int index = slotIndex(time);
+        return index >= 0 && slotsFor(date).isSet(index);
+    }
+
+    public void markBooked(LocalDate date, LocalTime time) {
+        afterCommit(() -> {
+            availabilityByMonth.remove(YearMonth.from(date));
+            int index = slotIndex(time);
+            if (index >= 0) {
+                // dates that were never loaded will read the new row from the database on first use
+                slotsByDate.computeIfPresent(date, (d, slots) -> slots.with(index));
+            }
+        });
+    }
+
+    public void markFree(LocalDate date, LocalTime time) {
+        afterCommit(() -> {
+            availabilityByMonth.remove(YearMonth.from(date));
+            int index = slotIndex(time);
+            if (index >= 0) {
+                slotsByDate.computeIfPresent(date, (d, slots) -> slots.without(index));
+            }
+        });
+    }
+
+    // A day loaded while the booking was still uncommitted is corrected here once it commits;
+    // a rollback leaves the cache untouched
+    private static void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+
+    public void invalidate(LocalDate date) {
+        slotsByDate.remove(date);
+        availabilityByMonth.remove(YearMonth.from(date));
+    }
+
+    // drop bitmaps for past dates shortly after midnight
+    @Scheduled(cron = "0 5 0 * * ?")
+    public void evictPastDates() {
+        LocalDate today = LocalDate.now();
+        int before = slotsByDate.size();
+        slotsByDate.keySet().removeIf(date -> date.isBefore(today));
+        availabilityByMonth.keySet().removeIf(month -> month.isBefore(YearMonth.from(today)));
+        log.info("Evicted {} past dates from the slot cache", before - slotsByDate.size());
+    }
+
+    private List<DayAvailabilityDTO> loadMonthAvailability(YearMonth month) {
+        log.debug("Loading booking counts for month: {}", month);
+        Map<LocalDate, Integer> bookedByDate = new HashMap<>();
+        for (Object[] row : appointmentRepository.countBookingsByDateBetween(month.atDay(1), month.atEndOfMonth())) {
+            bookedByDate.put((LocalDate) row[0], ((Number) row[1]).intValue());
+        }
+
+        List<DayAvailabilityDTO> days = new ArrayList<>(month.lengthOfMonth());
+        for (int day = 1; day <= month.lengthOfMonth(); day++) {
+            LocalDate date = month.atDay(day);
+            int booked = Math.min(bookedByDate.getOrDefault(date, 0), SLOT_COUNT);
+            days.add(new DayAvailabilityDTO(date, booked, SLOT_COUNT - booked));
+        }
+        return List.copyOf(days);
+    }
+
+    private DaySlots slotsFor(LocalDate date) {
+        return slotsByDate.computeIfAbsent(date, d -> {
+            log.debug("Loading booked slots for date: {}", d);
+            DaySlots slots = DaySlots.EMPTY;
+            for (LocalTime time : appointmentRepository.findTimesByDate(d)) {
+                int index = slotIndex(time);
+                if (index >= 0) {
+                    slots = slots.with(index);
+                }
+            }
+            return slots;
+        });
+    }
+
+    // returns -1 for times that do not fall exactly on a slot boundary
+    static int slotIndex(LocalTime time) {
+        if (time == null || time.getSecond() != 0 || time.getNano() != 0) {
+            return -1;
+        }
+        int minutes = (time.getHour() - FIRST_SLOT.getHour()) * 60 + time.getMinute();
+        if (minutes < 0 || minutes % SLOT_MINUTES != 0 || minutes / SLOT_MINUTES >= SLOT_COUNT) {
+            return -1;
+        }
+        return minutes / SLOT_MINUTES;
+    }
+
+    static LocalTime slotTime(int index) {
+        return FIRST_SLOT.plusMinutes((long) index * SLOT_MINUTES);
+    }
+
+    // Immutable 72-bit set held in two longs; updates swap in a new instance through the map.
+    static final class DaySlots {
+
+        static final DaySlots EMPTY = new DaySlots(0L, 0L);
+
+        private final long low;
+        private final long high;
+
+        private DaySlots(long low, long high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        boolean isSet(int index) {
+            return index < 64 ? (low & (1L << index)) != 0 : (high & (1L << (index - 64))) != 0;
+        }
+
+        DaySlots with(int index) {
+            return index < 64
+                    ? new DaySlots(low | (1L << index), high)
+                    : new DaySlots(low, high | (1L << (index - 64)));
+        }
+
+        DaySlots without(int index) {
+            return index < 64
+                    ? new DaySlots(low & ~(1L << index), high)
+                    : new DaySlots(low, high & ~(1L << (index - 64)));
+        }
+
+        int bookedCount() {
+            return Long.bitCount(low) + Long.bitCount(high);
+        }
+
+        List<LocalTime> freeTimes() {
+            List<LocalTime> times = new ArrayList<>(SLOT_COUNT - bookedCount());
+            for (int i = 0; i < SLOT_COUNT; i++) {
+                if (!isSet(i)) {
+                    times.add(slotTime(i));
+                }
+            }
+            return times;
+        }
+    }
+}
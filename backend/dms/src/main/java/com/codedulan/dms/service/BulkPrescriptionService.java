@@ -0,0 +1,304 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.BatchAllocation;
+import com.codedulan.dms.dto.BulkPrescriptionRequest;
+import com.codedulan.dms.dto.BulkPrescriptionResultDTO;
+import com.codedulan.dms.dto.CreatePrescriptionDTO;
+import com.codedulan.dms.dto.CreatePrescriptionItemDTO;
+import com.codedulan.dms.dto.PrescriptionDTO;
+import com.codedulan.dms.entity.*;
+import com.codedulan.dms.exception.BusinessLogicException;
+import com.codedulan.dms.exception.ResourceNotFoundException;
+import com.codedulan.dms.repository.*;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+// Issues many prescriptions in one transaction for outreach clinics. Every batch the whole set touches
+// is locked once up front, entries are then allocated in memory in request order, and a failing entry
+// is reported and skipped without affecting the others. An entry's allocation is planned in full before
+// any stock is taken, so a rejected entry leaves no trace in stock or the ledger. Rows are written with
+// JDBC batches.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BulkPrescriptionService {
+
+    static final int MAX_ENTRIES = 500;
+
+    private final PatientRepository patientRepository;
+    private final DiseaseRepository diseaseRepository;
+    private final InventoryRepository inventoryRepository;
+    private final InventoryService inventoryService;
+    private final PrescriptionBulkInsertRepository bulkInsertRepository;
+    private final DosageParser dosageParser;
+    private final IdempotencyStore idempotencyStore;
+    private final Validator validator;
+
+    // runs in the transaction IdempotencyStore opens once the key is claimed
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BulkPrescriptionResultDTO createPrescriptions(BulkPrescriptionRequest request, String idempotencyKey) {
+        return idempotencyStore.execute("prescription-bulk", idempotencyKey, request, () -> doCreatePrescriptions(request));
+    }
+
+    private BulkPrescriptionResultDTO doCreatePrescriptions(BulkPrescriptionRequest request) {
+        List<CreatePrescriptionDTO> entries = request.getPrescriptions();
+        if (entries.size() > MAX_ENTRIES) {
+            throw new BusinessLogicException("A bulk request can hold at most " + MAX_ENTRIES + " prescriptions");
+        }
+
+        // Parse every line once and add up the demand of the whole set per batch and per medicine
+        List<ParsedEntry> parsed = new ArrayList<>(entries.size());
+        Set<Long> patientIds = new HashSet<>();
+        Set<Long> diseaseIds = new HashSet<>();
+        Set<Long> inventoryIds = new TreeSet<>();
+        Map<Long, Integer> totalsByMedicineId = new TreeMap<>();
+        for (CreatePrescriptionDTO entry : entries) {
+            ParsedEntry parsedEntry = parse(entry);
+            parsed.add(parsedEntry);
+            if (parsedEntry.error != null) {
+                continue;
+            }
+            patientIds.add(entry.getPatientId());
+            if (entry.getDiseaseId() != null) {
+                diseaseIds.add(entry.getDiseaseId());
+            }
+            for (int line = 0; line < entry.getItems().size(); line++) {
+                CreatePrescriptionItemDTO itemDTO = entry.getItems().get(line);
+                if (itemDTO.getInventoryItemId() != null) {
+                    inventoryIds.add(itemDTO.getInventoryItemId());
+                } else {
+                    totalsByMedicineId.merge(itemDTO.getMedicineId(), parsedEntry.lineTotals.get(line), Integer::sum);
+                }
+            }
+        }
+
+        Map<Long, Patient> patientsById = patientRepository.findAllById(patientIds).stream()
+                .collect(Collectors.toMap(Patient::getPatientId, patient -> patient));
+        Map<Long, Disease> diseasesById = diseaseRepository.findAllById(diseaseIds).stream()
+                .collect(Collectors.toMap(Disease::getId, disease -> disease));
+
+        // Named batches first, then each medicine's FEFO pool in medicine id order, the same order
+        // single prescriptions lock in
+        Map<Long, InventoryItem> inventoryById = new HashMap<>();
+        if (!inventoryIds.isEmpty()) {
+            for (InventoryItem item : inventoryRepository.findAllByIdForUpdate(inventoryIds)) {
+                inventoryById.put(item.getId(), item);
+            }
+        }
+        LocalDate today = LocalDate.now();
+        Map<Long, List<InventoryItem>> poolsByMedicineId = new HashMap<>();
+        for (Map.Entry<Long, Integer> demand : totalsByMedicineId.entrySet()) {
+            List<InventoryItem> pool = new ArrayList<>(
+                    inventoryRepository.lockBatchesForAllocation(demand.getKey(), demand.getValue(), today));
+            pool.removeIf(batch -> batch.getRemainingQuantity() <= 0 || batch.getExpiryDate().isBefore(today));
+            pool.sort(Comparator.comparing(InventoryItem::getExpiryDate).thenComparing(InventoryItem::getId));
+            poolsByMedicineId.put(demand.getKey(), pool);
+        }
+
+        // Allocate in request order against the locked rows; the managed rows are flushed at commit
+        List<BulkPrescriptionResultDTO.Entry> results = new ArrayList<>(entries.size());
+        List<Prescription> prescriptions = new ArrayList<>();
+        LocalDateTime issueDate = LocalDateTime.now();
+        for (int index = 0; index < entries.size(); index++) {
+            ParsedEntry parsedEntry = parsed.get(index);
+            if (parsedEntry.error != null) {
+                results.add(new BulkPrescriptionResultDTO.Entry(index, false, null, parsedEntry.error));
+                continue;
+            }
+            List<BatchAllocation> planned = new ArrayList<>();
+            try {
+                Prescription prescription = buildPrescription(parsedEntry, issueDate, patientsById, diseasesById,
+                        inventoryById, poolsByMedicineId, planned);
+                // the whole entry fits, so its stock is taken now and later entries see what is left
+                for (BatchAllocation allocation : planned) {
+                    inventoryService.dispenseLocked(allocation.getInventoryItem(), allocation.getQuantity());
+                }
+                prescriptions.add(prescription);
+                results.add(new BulkPrescriptionResultDTO.Entry(index, true, null, null));
+            } catch (BusinessLogicException | ResourceNotFoundException e) {
+                results.add(new BulkPrescriptionResultDTO.Entry(index, false, null, e.getMessage()));
+            }
+        }
+
+        if (!prescriptions.isEmpty()) {
+            bulkInsertRepository.insertPrescriptions(prescriptions);
+            bulkInsertRepository.insertItems(prescriptions.stream()
+                    .flatMap(prescription -> prescription.getPrescriptionItems().stream())
+                    .collect(Collectors.toList()));
+        }
+
+        int created = 0;
+        for (BulkPrescriptionResultDTO.Entry result : results) {
+            if (result.isSuccess()) {
+                result.setPrescription(PrescriptionDTO.fromEntity(prescriptions.get(created++)));
+            }
+        }
+
+        log.info("Bulk issued {} of {} prescriptions, locking {} named batches and {} medicine pools",
+                created, entries.size(), inventoryById.size(), poolsByMedicineId.size());
+        return new BulkPrescriptionResultDTO(created, entries.size() - created, results);
+    }
+
+    private ParsedEntry parse(CreatePrescriptionDTO entry) {
+        ParsedEntry parsedEntry = new ParsedEntry(entry);
+        if (entry == null) {
+            parsedEntry.error = "Prescription entry is empty";
+            return parsedEntry;
+        }
+        Set<ConstraintViolation<CreatePrescriptionDTO>> violations = validator.validate(entry);
+        if (!violations.isEmpty()) {
+            parsedEntry.error = violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+            return parsedEntry;
+        }
+
+        for (CreatePrescriptionItemDTO itemDTO : entry.getItems()) {
+            DosageSchedule schedule = dosageParser.parse(itemDTO.getDosageInstructions());
+            int total = dosageParser.totalQuantity(schedule, itemDTO.getQuantity(), itemDTO.getDaysSupply());
+            if (itemDTO.getInventoryItemId() == null && itemDTO.getMedicineId() == null) {
+                parsedEntry.error = "Each prescription item needs an inventory item or a medicine";
+                return parsedEntry;
+            }
+            if (itemDTO.getInventoryItemId() == null && total <= 0) {
+                parsedEntry.error = "Prescription item for medicine " + itemDTO.getMedicineId() + " does not need any units";
+                return parsedEntry;
+            }
+            parsedEntry.schedules.add(schedule);
+            parsedEntry.lineTotals.add(total);
+        }
+        return parsedEntry;
+    }
+
+    private Prescription buildPrescription(ParsedEntry parsedEntry, LocalDateTime issueDate,
+                                           Map<Long, Patient> patientsById, Map<Long, Disease> diseasesById,
+                                           Map<Long, InventoryItem> inventoryById,
+                                           Map<Long, List<InventoryItem>> poolsByMedicineId,
+                                           List<BatchAllocation> planned) {
+        CreatePrescriptionDTO entry = parsedEntry.dto;
+        Patient patient = patientsById.get(entry.getPatientId());
+        if (patient == null) {
+            throw new ResourceNotFoundException("Patient not found with id: " + entry.getPatientId());
+        }
+
+        Prescription prescription = Prescription.builder()
+                .patient(patient)
+                .issueDate(issueDate)
+                .prescriptionNotes(entry.getPrescriptionNotes())
+                .prescriptionItems(new ArrayList<>())
+                .build();
+
+        if (entry.getDiseaseId() != null) {
+            Disease disease = diseasesById.get(entry.getDiseaseId());
+            if (disease == null) {
+                throw new ResourceNotFoundException("Disease not found with id: " + entry.getDiseaseId());
+            }
+            prescription.setDisease(disease);
+        } else if (entry.getCustomDisease() != null && !entry.getCustomDisease().trim().isEmpty()) {
+            prescription.setCustomDisease(entry.getCustomDisease().trim());
+        }
+
+        for (int line = 0; line < entry.getItems().size(); line++) {
+            CreatePrescriptionItemDTO itemDTO = entry.getItems().get(line);
+            int total = parsedEntry.lineTotals.get(line);
+
+            List<BatchAllocation> portions = itemDTO.getInventoryItemId() != null
+                    ? planNamedBatch(inventoryById, itemDTO.getInventoryItemId(), total, planned)
+                    : planFromPool(poolsByMedicineId.get(itemDTO.getMedicineId()), itemDTO.getMedicineId(), total, planned);
+            planned.addAll(portions);
+
+            for (BatchAllocation portion : portions) {
+                prescription.getPrescriptionItems().add(PrescriptionItem.builder()
+                        .prescription(prescription)
+                        .inventoryItem(portion.getInventoryItem())
+                        .quantity(itemDTO.getQuantity())
+                        .dosageInstructions(itemDTO.getDosageInstructions())
+                        .daysSupply(itemDTO.getDaysSupply())
+                        .dosageSchedule(parsedEntry.schedules.get(line).toBuilder().build())
+                        .dispensedQuantity(portion.getQuantity())
+                        .build());
+            }
+        }
+        return prescription;
+    }
+
+    private List<BatchAllocation> planNamedBatch(Map<Long, InventoryItem> inventoryById, Long inventoryItemId, int quantity,
+                                                 List<BatchAllocation> planned) {
+        InventoryItem batch = inventoryById.get(inventoryItemId);
+        if (batch == null) {
+            throw new ResourceNotFoundException("Inventory item not found with id: " + inventoryItemId);
+        }
+        int available = unplanned(batch, planned);
+        if (available < quantity) {
+            throw new BusinessLogicException("Insufficient quantity available for " + batch.getMedicine().getName() +
+                    ". Available: " + available + ", Requested total: " + quantity);
+        }
+        return List.of(new BatchAllocation(batch, quantity));
+    }
+
+    // Earliest expiry first; batches emptied by earlier entries are simply passed over
+    private List<BatchAllocation> planFromPool(List<InventoryItem> pool, Long medicineId, int quantity,
+                                               List<BatchAllocation> planned) {
+        int available = pool.stream().mapToInt(batch -> unplanned(batch, planned)).sum();
+        if (available < quantity) {
+            String medicine = pool.isEmpty() ? "medicine " + medicineId : pool.get(0).getMedicine().getName();
+            throw new BusinessLogicException("Insufficient quantity available for " + medicine +
+                    ". Available: " + available + ", Requested total: " + quantity);
+        }
+
+        List<BatchAllocation> portions = new ArrayList<>();
+        int outstanding = quantity;
+        for (InventoryItem batch : pool) {
+            if (outstanding == 0) {
+                break;
+            }
+            int portion = Math.min(outstanding, unplanned(batch, planned));
+            if (portion > 0) {
+                portions.add(new BatchAllocation(batch, portion));
+                outstanding -= portion;
+            }
+        }
+        return portions;
+    }
+
+    // what is left in a batch once the earlier lines of the same entry have had their share
+    private static int unplanned(InventoryItem batch, List<BatchAllocation> planned) {
+        int remaining = batch.getRemainingQuantity();
+        for (BatchAllocation allocation : planned) {
+            if (allocation.getInventoryItem() == batch) {
+                remaining -= allocation.getQuantity();
+            }
+        }
+        return remaining;
+    }
+
+    private static final class ParsedEntry {
+        private final CreatePrescriptionDTO dto;
+        private final List<DosageSchedule> schedules = new ArrayList<>();
+        private final List<Integer> lineTotals = new ArrayList<>();
+        private String error;
+
+        private ParsedEntry(CreatePrescriptionDTO dto) {
+            this.dto = dto;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.ReorderForecastDTO;
+import com.codedulan.dms.repository.PrescriptionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Per-medicine daily demand, smoothed exponentially over closed days, so burn rate can be read without a query.
+// Loaded from prescription history at startup, then kept in step by InventoryService as units are
+// dispensed and returned. A day is folded into the rate once it is over; days without any dispensing
+// count as zero demand. Changes racing the startup load may be lost.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ConsumptionForecast {
+
+    static final int HISTORY_DAYS = 90;
+    // weight of the latest day; 0.2 gives the last week or so most of the say
+    static final double SMOOTHING = 0.2;
+    // days between placing an order and the delivery arriving
+    static final int LEAD_TIME_DAYS = 14;
+    // days of demand kept in hand when a medicine has no reorder threshold of its own
+    static final int SAFETY_DAYS = 7;
+
+    private final PrescriptionRepository prescriptionRepository;
+
+    private volatile Map<Long, Demand> demandByMedicine = new ConcurrentHashMap<>();
+
+    public double dailyDemand(Long medicineId, LocalDate today) {
+        Demand demand = demandByMedicine.get(medicineId);
+        return demand != null ? demand.rate(today) : 0;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            load();
+        } catch (DataAccessException e) {
+            log.warn("Could not load dispensing history at startup, forecasts start from no demand", e);
+        }
+    }
+
+    public void load() {
+        LocalDate today = LocalDate.now();
+        Map<Long, Demand> loaded = new ConcurrentHashMap<>();
+        // one row per medicine and issue day, in day order: medicine id, day, units
+        for (Object[] row : prescriptionRepository.findDailyDispensedSince(today.minusDays(HISTORY_DAYS).atStartOfDay())) {
+            loaded.computeIfAbsent(((Number) row[0]).longValue(), id -> new Demand())
+                    .record(toLocalDate(row[1]), ((Number) row[2]).longValue());
+        }
+        demandByMedicine = loaded;
+        log.info("Loaded dispensing history for {} medicines", loaded.size());
+    }
+
+    // negative for units given back; counted on the day the change commits
+    public void dispensed(Long medicineId, long quantity) {
+        Map<Long, Demand> current = demandByMedicine;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            current.computeIfAbsent(medicineId, id -> new Demand()).record(LocalDate.now(), quantity);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                current.computeIfAbsent(medicineId, id -> new Demand()).record(LocalDate.now(), quantity);
+            }
+        });
+    }
+
+    // Reorder point is the demand over the lead time plus a safety stock: the medicine's reorder
+    // threshold when it has one, SAFETY_DAYS of demand otherwise
+    static ReorderForecastDTO forecast(Long medicineId, long available, double rate, Integer threshold, LocalDate today) {
+        long safetyStock = threshold != null ? threshold : (long) Math.ceil(rate * SAFETY_DAYS);
+        long reorderPoint = (long) Math.ceil(rate * LEAD_TIME_DAYS) + safetyStock;
+        boolean reorderNow = available <= reorderPoint && (rate > 0 || threshold != null);
+        if (rate <= 0) {
+            return new ReorderForecastDTO(medicineId, available, 0, null, reorderPoint,
+                    reorderNow ? today : null, reorderNow);
+        }
+        long daysUntilReorder = Math.max(0, (long) Math.floor((available - reorderPoint) / rate));
+        return new ReorderForecastDTO(medicineId, available, Math.round(rate * 100) / 100.0,
+                Math.round(available / rate * 10) / 10.0, reorderPoint, today.plusDays(daysUntilReorder), reorderNow);
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+        return value instanceof java.sql.Date date ? date.toLocalDate() : (LocalDate) value;
+    }
+
+    // Smoothed rate over closed days plus the running total of the day still open
+    static final class Demand {
+        private double level;
+        private boolean started;
+        private LocalDate day;
+        private long dayTotal;
+
+        synchronized void record(LocalDate date, long quantity) {
+            roll(date);
+            dayTotal += quantity;
+        }
+
+        synchronized double rate(LocalDate today) {
+            roll(today);
+            return Math.max(0, level);
+        }
+
+        private void roll(LocalDate date) {
+            if (day == null) {
+                day = date;
+                return;
+            }
+            if (!date.isAfter(day)) {
+                return;
+            }
+            // the first closed day seeds the level, later ones are blended in
+            level = started ? SMOOTHING * dayTotal + (1 - SMOOTHING) * level : dayTotal;
+            started = true;
+            // every day in between passed without dispensing
+            long quietDays = ChronoUnit.DAYS.between(day, date) - 1;
+            level *= Math.pow(1 - SMOOTHING, quietDays);
+            day = date;
+            dayTotal = 0;
+        }
+    }
+}
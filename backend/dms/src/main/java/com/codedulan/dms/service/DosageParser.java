@@ -0,0 +1,170 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.entity.DosageSchedule;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Parses dosage instructions such as "1 tab TDS x 5 days", "q6h PRN" or "taper 4-3-2-1 every 3 days"
+// into a DosageSchedule. Instructions are matched on whole words, so "OD" no longer matches inside
+// other abbreviations. Results are kept in a small LRU map since the same few instructions repeat.
+@Component
+@Slf4j
+public class DosageParser {
+
+    static final int CACHE_SIZE = 512;
+
+    private static final Pattern NON_WORD = Pattern.compile("[^A-Z0-9]+");
+
+    private static final Pattern TAPER = Pattern.compile("\\bTAPER (\\d+(?: \\d+)+)(?: (?:EVERY|EACH|X) (\\d+) DAYS?)?\\b");
+    private static final Pattern STAT = Pattern.compile("\\bSTAT\\b");
+    private static final Pattern EVERY_HOURS = Pattern.compile("\\b(?:Q ?(\\d+) ?H|EVERY (\\d+) (?:HOURS?|HRS?))\\b");
+    private static final Pattern TIMES_A_DAY = Pattern.compile("\\b(?:(\\d+|THREE|FOUR) TIMES|(ONCE|TWICE))(?: A| PER)? (?:DAY|DAILY)\\b");
+    private static final Pattern WEEKLY = Pattern.compile("\\b(?:WEEKLY|ONCE A WEEK|EVERY WEEK)\\b");
+    private static final Pattern ALTERNATE_DAYS = Pattern.compile("\\b(?:EOD|QOD|ALTERNATE DAYS?|EVERY OTHER DAY)\\b");
+    private static final Pattern FOUR_DAILY = Pattern.compile("\\b(?:QDS|QID)\\b");
+    private static final Pattern THREE_DAILY = Pattern.compile("\\b(?:TDS|TID)\\b");
+    private static final Pattern TWO_DAILY = Pattern.compile("\\b(?:BD|BID)\\b");
+    private static final Pattern ONE_DAILY = Pattern.compile("\\b(?:OD|QD|DAILY|MANE|NOCTE)\\b");
+    private static final Pattern AS_NEEDED = Pattern.compile("\\b(?:PRN|SOS|AS NEEDED|WHEN REQUIRED)\\b");
+    private static final Pattern DURATION = Pattern.compile("\\b(?:FOR|X) ?(\\d+) (DAYS?|WEEKS?|MONTHS?)\\b");
+
+    private static final DosageSchedule ONCE_DAILY = perDay(1);
+
+    private final Map<String, DosageSchedule> cache = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, DosageSchedule> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    // returns a fresh copy each time since the schedule is embedded in (and owned by) an entity
+    public DosageSchedule parse(String instructions) {
+        if (instructions == null || instructions.isBlank()) {
+            return ONCE_DAILY.toBuilder().build();
+        }
+        DosageSchedule schedule = cache.get(instructions);
+        if (schedule == null) {
+            schedule = parseUncached(instructions);
+            cache.put(instructions, schedule);
+        }
+        return schedule.toBuilder().build();
+    }
+
+    // total units for a line; days supply from the prescription wins over a duration in the text
+    public int totalQuantity(DosageSchedule schedule, int quantityPerDose, Integer daysSupply) {
+        int days = daysSupply != null ? daysSupply
+                : schedule.getDurationDays() != null ? schedule.getDurationDays() : 1;
+        return quantityPerDose * schedule.dosesOver(days);
+    }
+
+    DosageSchedule parseUncached(String instructions) {
+        String text = NON_WORD.matcher(instructions.toUpperCase(Locale.ROOT)).replaceAll(" ").trim();
+        boolean asNeeded = AS_NEEDED.matcher(text).find();
+        Integer durationDays = parseDuration(text);
+
+        DosageSchedule schedule = parseFrequency(text);
+        schedule.setAsNeeded(asNeeded);
+        if (schedule.getDurationDays() == null) {
+            schedule.setDurationDays(durationDays);
+        }
+        return schedule;
+    }
+
+    private DosageSchedule parseFrequency(String text) {
+        Matcher matcher = TAPER.matcher(text);
+        if (matcher.find()) {
+            int stepDays = matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : 1;
+            int doses = 0;
+            int steps = 0;
+            for (String step : matcher.group(1).split(" ")) {
+                doses += Integer.parseInt(step) * stepDays;
+                steps++;
+            }
+            // each step is a daily dose multiplier, so the schedule fixes both the total and the duration
+            return DosageSchedule.builder()
+                    .dosesPerPeriod(doses).periodDays(steps * stepDays)
+                    .durationDays(steps * stepDays).fixedDoseCount(doses)
+                    .build();
+        }
+
+        if (STAT.matcher(text).find()) {
+            return DosageSchedule.builder().dosesPerPeriod(1).periodDays(1).fixedDoseCount(1).build();
+        }
+
+        matcher = EVERY_HOURS.matcher(text);
+        if (matcher.find()) {
+            int hours = Integer.parseInt(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+            if (hours > 0) {
+                // smallest whole number of days the interval fits into, e.g. q36h is 2 doses per 3 days
+                int periodHours = hours / gcd(hours, 24) * 24;
+                return DosageSchedule.builder()
+                        .dosesPerPeriod(periodHours / hours).periodDays(periodHours / 24).intervalHours(hours)
+                        .build();
+            }
+        }
+
+        matcher = TIMES_A_DAY.matcher(text);
+        if (matcher.find()) {
+            String word = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+            int times = switch (word) {
+                case "ONCE" -> 1;
+                case "TWICE" -> 2;
+                case "THREE" -> 3;
+                case "FOUR" -> 4;
+                default -> Integer.parseInt(word);
+            };
+            if (times > 0) {
+                return perDay(times);
+            }
+        }
+
+        if (WEEKLY.matcher(text).find()) {
+            return DosageSchedule.builder().dosesPerPeriod(1).periodDays(7).build();
+        }
+        if (ALTERNATE_DAYS.matcher(text).find()) {
+            return DosageSchedule.builder().dosesPerPeriod(1).periodDays(2).build();
+        }
+        if (FOUR_DAILY.matcher(text).find()) {
+            return perDay(4);
+        }
+        if (THREE_DAILY.matcher(text).find()) {
+            return perDay(3);
+        }
+        if (TWO_DAILY.matcher(text).find()) {
+            return perDay(2);
+        }
+        if (!ONE_DAILY.matcher(text).find() && !AS_NEEDED.matcher(text).find()) {
+            log.debug("Unrecognised dosage instruction, assuming once daily: {}", text);
+        }
+        return perDay(1);
+    }
+
+    private static Integer parseDuration(String text) {
+        Matcher matcher = DURATION.matcher(text);
+        if (!matcher.find()) {
+            return null;
+        }
+        int amount = Integer.parseInt(matcher.group(1));
+        return switch (matcher.group(2).charAt(0)) {
+            case 'W' -> amount * 7;
+            case 'M' -> amount * 30;
+            default -> amount;
+        };
+    }
+
+    private static DosageSchedule perDay(int doses) {
+        return DosageSchedule.builder().dosesPerPeriod(doses).periodDays(1).build();
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
@@ -0,0 +1,131 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.exception.ResourceAlreadyExistsException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Remembers the result of create requests by their Idempotency-Key so a client retry gets the
+// original response instead of running the work twice. The work runs in a transaction this store opens
+// once the key is claimed, so a retry waiting on an in-flight key holds no database connection.
+// Callers must therefore not be transactional themselves. A result is only published once the
+// transaction commits; if it rolls back the key is released and a retry runs normally.
+// Keys expire after a day.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyStore {
+
+    static final Duration TTL = Duration.ofHours(24);
+    private static final long IN_FLIGHT_WAIT_SECONDS = 30;
+
+    private final TransactionOperations transactionOperations;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String scope, String key, Object request, Supplier<T> action) {
+        if (key == null || key.isBlank()) {
+            return transactionOperations.execute(status -> action.get());
+        }
+        String storeKey = scope + ":" + key;
+        int fingerprint = request.hashCode();
+
+        while (true) {
+            Entry entry = new Entry(fingerprint, System.currentTimeMillis() + TTL.toMillis());
+            Entry existing = entries.putIfAbsent(storeKey, entry);
+            if (existing == null) {
+                return run(storeKey, entry, action);
+            }
+            if (existing.isExpired()) {
+                entries.remove(storeKey, existing);
+                continue;
+            }
+            if (existing.fingerprint != fingerprint) {
+                throw new ResourceAlreadyExistsException("Idempotency-Key " + key + " was already used for a different request");
+            }
+            try {
+                log.info("Replaying result for Idempotency-Key {} ({})", key, scope);
+                return (T) existing.result.get(IN_FLIGHT_WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                // the first attempt failed and released the key, so this request runs it again
+                log.debug("Earlier attempt for Idempotency-Key {} failed, retrying", key);
+            } catch (TimeoutException e) {
+                throw new ResourceAlreadyExistsException("A request with Idempotency-Key " + key + " is still in progress");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for Idempotency-Key " + key, e);
+            }
+        }
+    }
+
+    private <T> T run(String storeKey, Entry entry, Supplier<T> action) {
+        try {
+            return transactionOperations.execute(status -> {
+                T result = action.get();
+                publishOnCommit(storeKey, entry, result);
+                return result;
+            });
+        } catch (RuntimeException e) {
+            release(storeKey, entry, e);
+            throw e;
+        }
+    }
+
+    private void publishOnCommit(String storeKey, Entry entry, Object result) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            entry.result.complete(result);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    entry.result.complete(result);
+                } else {
+                    release(storeKey, entry, new IllegalStateException("Transaction rolled back"));
+                }
+            }
+        });
+    }
+
+    private void release(String storeKey, Entry entry, Exception cause) {
+        entries.remove(storeKey, entry);
+        entry.result.completeExceptionally(cause);
+    }
+
+    @Scheduled(fixedRate = 60 * 60 * 1000)
+    public void evictExpired() {
+        int before = entries.size();
+        entries.values().removeIf(Entry::isExpired);
+        log.debug("Evicted {} expired idempotency keys", before - entries.size());
+    }
+
+    private static final class Entry {
+        private final int fingerprint;
+        private final long expiresAt;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        private Entry(int fingerprint, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+    }
+}
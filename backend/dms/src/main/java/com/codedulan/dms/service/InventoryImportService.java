@@ -0,0 +1,231 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.InventoryImportResultDTO;
+import com.codedulan.dms.entity.InventoryItem;
+import com.codedulan.dms.entity.Medicine;
+import com.codedulan.dms.exception.BusinessLogicException;
+import com.codedulan.dms.repository.InventoryBulkInsertRepository;
+import com.codedulan.dms.repository.MedicineRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Reads a supplier delivery note as CSV, one batch per row, straight from the request body.
+// Medicines are resolved through a name/id map loaded once, valid rows are inserted in JDBC batches
+// of CHUNK_SIZE, and invalid rows are reported by line without stopping the import.
+// Expected header: medicine,batch_number,expiry_date,quantity,buy_price,sell_price[,received_date]
+// where medicine is a name or an id and dates are ISO (yyyy-MM-dd).
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InventoryImportService {
+
+    static final int CHUNK_SIZE = 1000;
+    static final int MAX_REPORTED_ERRORS = 1000;
+
+    private static final List<String> REQUIRED_COLUMNS =
+            List.of("medicine", "batch_number", "expiry_date", "quantity", "buy_price", "sell_price");
+
+    private final MedicineRepository medicineRepository;
+    private final InventoryBulkInsertRepository bulkInsertRepository;
+    private final InventoryService inventoryService;
+
+    @Transactional
+    public InventoryImportResultDTO importDelivery(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String headerLine = reader.readLine();
+        if (headerLine == null) {
+            throw new BusinessLogicException("The delivery file is empty");
+        }
+        Map<String, Integer> columns = parseHeader(headerLine);
+
+        Map<String, Long> medicineIdsByName = new HashMap<>();
+        Set<Long> medicineIds = new HashSet<>();
+        for (Object[] row : medicineRepository.findAllIdsAndNames()) {
+            medicineIdsByName.put(((String) row[1]).trim().toLowerCase(Locale.ROOT), (Long) row[0]);
+            medicineIds.add((Long) row[0]);
+        }
+
+        LocalDate today = LocalDate.now();
+        InventoryImportResultDTO result = new InventoryImportResultDTO(0, 0, 0, new ArrayList<>(), false);
+        List<InventoryItem> chunk = new ArrayList<>(CHUNK_SIZE);
+        int lineNumber = 1;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            result.setRowsRead(result.getRowsRead() + 1);
+            try {
+                chunk.add(parseRow(splitCsvLine(line), columns, medicineIdsByName, medicineIds, today));
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                reject(result, lineNumber, e.getMessage());
+                continue;
+            }
+            if (chunk.size() == CHUNK_SIZE) {
+                insertChunk(chunk, result);
+            }
+        }
+        insertChunk(chunk, result);
+
+        log.info("Imported delivery: {} rows read, {} imported, {} rejected",
+                result.getRowsRead(), result.getImported(), result.getRejected());
+        return result;
+    }
+
+    private void insertChunk(List<InventoryItem> chunk, InventoryImportResultDTO result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<InventoryItem> batches = new ArrayList<>(chunk);
+        bulkInsertRepository.insertItems(batches);
+        inventoryService.recordReceived(batches);
+        result.setImported(result.getImported() + batches.size());
+        chunk.clear();
+    }
+
+    private void reject(InventoryImportResultDTO result, int lineNumber, String message) {
+        result.setRejected(result.getRejected() + 1);
+        if (result.getErrors().size() < MAX_REPORTED_ERRORS) {
+            result.getErrors().add(new InventoryImportResultDTO.RowError(lineNumber, message));
+        } else {
+            result.setErrorsTruncated(true);
+        }
+    }
+
+    private Map<String, Integer> parseHeader(String headerLine) {
+        // drop the byte order mark spreadsheet exports often start with
+        if (headerLine.startsWith("\uFEFF")) {
+            headerLine = headerLine.substring(1);
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> names = splitCsvLine(headerLine);
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String required : REQUIRED_COLUMNS) {
+            if (!columns.containsKey(required)) {
+                throw new BusinessLogicException("The delivery file has no " + required + " column");
+            }
+        }
+        return columns;
+    }
+
+    private InventoryItem parseRow(List<String> fields, Map<String, Integer> columns,
+                                   Map<String, Long> medicineIdsByName, Set<Long> medicineIds, LocalDate today) {
+        String medicine = field(fields, columns, "medicine");
+        if (medicine.isEmpty()) {
+            throw new IllegalArgumentException("Medicine is required");
+        }
+        Long medicineId = medicineIdsByName.get(medicine.toLowerCase(Locale.ROOT));
+        if (medicineId == null && medicine.chars().allMatch(Character::isDigit) && medicineIds.contains(Long.valueOf(medicine))) {
+            medicineId = Long.valueOf(medicine);
+        }
+        if (medicineId == null) {
+            throw new IllegalArgumentException("Unknown medicine: " + medicine);
+        }
+
+        String expiry = field(fields, columns, "expiry_date");
+        if (expiry.isEmpty()) {
+            throw new IllegalArgumentException("Expiry date is required");
+        }
+        LocalDate expiryDate = LocalDate.parse(expiry);
+        if (expiryDate.isBefore(today)) {
+            throw new IllegalArgumentException("Cannot add expired medicine to inventory");
+        }
+
+        int quantity = parseInt(field(fields, columns, "quantity"), "Quantity");
+        if (quantity < 1) {
+            throw new IllegalArgumentException("Quantity must be at least 1");
+        }
+        BigDecimal buyPrice = parsePrice(field(fields, columns, "buy_price"), "Buy price");
+        BigDecimal sellPrice = parsePrice(field(fields, columns, "sell_price"), "Sell price");
+
+        String received = columns.containsKey("received_date") ? field(fields, columns, "received_date") : "";
+        String batchNumber = field(fields, columns, "batch_number");
+
+        return InventoryItem.builder()
+                .medicine(Medicine.builder().id(medicineId).build())
+                .batchNumber(batchNumber.isEmpty() ? null : batchNumber)
+                .expiryDate(expiryDate)
+                .quantity(quantity)
+                .remainingQuantity(quantity)
+                .buyPrice(buyPrice)
+                .sellPrice(sellPrice)
+                .receivedDate(received.isEmpty() ? today : LocalDate.parse(received))
+                .build();
+    }
+
+    private static String field(List<String> fields, Map<String, Integer> columns, String name) {
+        int index = columns.get(name);
+        return index < fields.size() ? fields.get(index).trim() : "";
+    }
+
+    private static int parseInt(String value, String label) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(label + " is not a whole number: " + value);
+        }
+    }
+
+    private static BigDecimal parsePrice(String value, String label) {
+        BigDecimal price;
+        try {
+            price = new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(label + " is not a number: " + value);
+        }
+        if (price.signum() < 0) {
+            throw new IllegalArgumentException(label + " cannot be negative");
+        }
+        return price;
+    }
+
+    // RFC 4180 fields on one line: commas separate, quotes wrap fields and "" is a literal quote
+    static List<String> splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+}
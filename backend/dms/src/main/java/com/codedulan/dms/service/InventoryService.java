@@ -1,10 +1,16 @@
 package com.codedulan.dms.service;
 
+import com.codedulan.dms.dto.BatchAllocation;
 import com.codedulan.dms.dto.CreateInventoryItemDTO;
 import com.codedulan.dms.dto.InventoryItemDTO;
+import com.codedulan.dms.dto.ReorderForecastDTO;
+import com.codedulan.dms.dto.StockBalanceDTO;
+import com.codedulan.dms.dto.StockLevelDTO;
+import com.codedulan.dms.dto.StockMovementDTO;
 import com.codedulan.dms.dto.UpdateInventoryItemDTO;
 import com.codedulan.dms.entity.InventoryItem;
 import com.codedulan.dms.entity.Medicine;
+import com.codedulan.dms.entity.StockMovementType;
 import com.codedulan.dms.exception.BusinessLogicException;
 import com.codedulan.dms.exception.ResourceNotFoundException;
 import com.codedulan.dms.repository.InventoryRepository;
@@ -15,6 +21,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -24,8 +33,14 @@ import java.util.stream.Collectors;
 @Slf4j
 public class InventoryService {
 
+    private static final int MAX_ALLOCATION_ATTEMPTS = 3;
+
     private final InventoryRepository inventoryRepository;
     private final MedicineRepository medicineRepository;
+    private final MedicineStockLevels stockLevels;
+    private final LowStockFlags lowStockFlags;
+    private final StockLedger stockLedger;
+    private final ConsumptionForecast consumptionForecast;
 
     public List<InventoryItemDTO> getAllInventoryItems() {
         return inventoryRepository.findAll().stream()
@@ -62,11 +77,60 @@ public class InventoryService {
     }
 
     public List<InventoryItemDTO> getLowStockItems() {
-        return inventoryRepository.findLowStockItems().stream()
+        return inventoryRepository.findLowStockItems(LocalDate.now()).stream()
                 .map(InventoryItemDTO::fromEntity)
                 .collect(Collectors.toList());
     }
 
+    // Served from the in-memory counters, no query
+    public StockLevelDTO getStockLevel(Long medicineId) {
+        return stockLevels.get(medicineId);
+    }
+
+    public List<StockLevelDTO> getStockLevels() {
+        return stockLevels.getAll();
+    }
+
+    public void rebuildStockLevels() {
+        stockLevels.rebuild();
+    }
+
+    // Burn rate and stock come from memory; the only query is the thresholds of the formulary
+    public List<ReorderForecastDTO> getReorderForecasts() {
+        LocalDate today = LocalDate.now();
+        return medicineRepository.findAllReorderThresholds().stream()
+                .map(row -> {
+                    Long medicineId = (Long) row[0];
+                    return ConsumptionForecast.forecast(medicineId, stockLevels.available(medicineId),
+                            consumptionForecast.dailyDemand(medicineId, today), (Integer) row[1], today);
+                })
+                .sorted(Comparator.comparing(ReorderForecastDTO::getReorderDate, Comparator.nullsLast(Comparator.naturalOrder()))
+                        .thenComparing(ReorderForecastDTO::getMedicineId))
+                .collect(Collectors.toList());
+    }
+
+    public ReorderForecastDTO getReorderForecast(Long medicineId) {
+        Medicine medicine = medicineRepository.findById(medicineId)
+                .orElseThrow(() -> new ResourceNotFoundException("Medicine not found with id: " + medicineId));
+        LocalDate today = LocalDate.now();
+        return ConsumptionForecast.forecast(medicineId, stockLevels.available(medicineId),
+                consumptionForecast.dailyDemand(medicineId, today), medicine.getReorderThreshold(), today);
+    }
+
+    public List<StockMovementDTO> getStockMovements(Long inventoryItemId) {
+        if (!inventoryRepository.existsById(inventoryItemId)) {
+            throw new ResourceNotFoundException("Inventory item not found with id: " + inventoryItemId);
+        }
+        return stockLedger.getMovements(inventoryItemId);
+    }
+
+    public StockBalanceDTO getStockBalance(Long medicineId, LocalDateTime at) {
+        if (!medicineRepository.existsById(medicineId)) {
+            throw new ResourceNotFoundException("Medicine not found with id: " + medicineId);
+        }
+        return stockLedger.getBalance(medicineId, at != null ? at : LocalDateTime.now());
+    }
+
     public InventoryItemDTO createInventoryItem(CreateInventoryItemDTO createDTO) {
         Medicine medicine = medicineRepository.findById(createDTO.getMedicineId())
                 .orElseThrow(() -> new ResourceNotFoundException("Medicine not found with id: " + createDTO.getMedicineId()));
@@ -90,11 +154,21 @@ public class InventoryService {
                 .build();
 
         InventoryItem savedItem = inventoryRepository.save(item);
+        stockLevels.received(savedItem, savedItem.getQuantity());
+        stockMoved(savedItem.getId(), medicine.getId(), StockMovementType.RECEIVE, savedItem.getQuantity(), null);
         log.info("New inventory item created for medicine: {}, quantity: {}",
                 medicine.getName(), createDTO.getQuantity());
         return InventoryItemDTO.fromEntity(savedItem);
     }
 
+    // Books batches that were inserted in bulk into the stock levels, ledger and low stock flags
+    public void recordReceived(List<InventoryItem> batches) {
+        for (InventoryItem batch : batches) {
+            stockLevels.received(batch, batch.getQuantity());
+            stockMoved(batch.getId(), batch.getMedicine().getId(), StockMovementType.RECEIVE, batch.getQuantity(), null);
+        }
+    }
+
     public InventoryItemDTO updateInventoryItem(Long id, UpdateInventoryItemDTO updateDTO) {
         InventoryItem item = inventoryRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Inventory item not found with id: " + id));
@@ -107,12 +181,24 @@ public class InventoryService {
             if (updateDTO.getExpiryDate().isBefore(LocalDate.now())) {
                 throw new BusinessLogicException("Expiry date cannot be in the past");
             }
+            LocalDate previousExpiry = item.getExpiryDate();
             item.setExpiryDate(updateDTO.getExpiryDate());
+            stockLevels.expiryChanged(item, previousExpiry);
+            if (previousExpiry.isBefore(LocalDate.now())) {
+                // bring back whatever the nightly write-off has taken; nothing if it has not run since the expiry
+                stockMoved(item.getId(), item.getMedicine().getId(), StockMovementType.ADJUST,
+                        (int) (item.getRemainingQuantity() - stockLedger.balanceOf(item.getId())), "Expiry date extended");
+            } else {
+                lowStockFlags.stockChanged(item.getMedicine().getId());
+            }
         }
 
         if (updateDTO.getAdditionalQuantity() != null && updateDTO.getAdditionalQuantity() > 0) {
             item.setQuantity(item.getQuantity() + updateDTO.getAdditionalQuantity());
             item.setRemainingQuantity(item.getRemainingQuantity() + updateDTO.getAdditionalQuantity());
+            stockLevels.received(item, updateDTO.getAdditionalQuantity());
+            stockMoved(item.getId(), item.getMedicine().getId(), StockMovementType.RECEIVE,
+                    updateDTO.getAdditionalQuantity(), null);
             log.info("Added {} units to inventory item for medicine: {}",
                     updateDTO.getAdditionalQuantity(), item.getMedicine().getName());
         }
@@ -138,22 +224,99 @@ public class InventoryService {
         }
 
         inventoryRepository.deleteById(id);
+        stockLevels.removed(item);
+        if (!item.getExpiryDate().isBefore(LocalDate.now())) {
+            stockMoved(item.getId(), item.getMedicine().getId(), StockMovementType.ADJUST,
+                    -item.getRemainingQuantity(), "Batch deleted");
+        }
         log.info("Inventory item deleted for medicine: {}", item.getMedicine().getName());
     }
 
     // Method to reduce quantity when prescriptions are issued
     public void reduceInventoryQuantity(Long inventoryItemId, int quantityToReduce) {
+        // the stock check is part of the UPDATE, so concurrent dispensers cannot oversell or lose a decrement
+        if (inventoryRepository.decrementRemainingQuantity(inventoryItemId, quantityToReduce) == 1) {
+            stockLevels.dispensed(inventoryItemId, quantityToReduce);
+            stockMoved(inventoryItemId, inventoryRepository.findMedicineIdById(inventoryItemId),
+                    StockMovementType.DISPENSE, -quantityToReduce, null);
+            log.info("Reduced {} units from inventory item: {}", quantityToReduce, inventoryItemId);
+            return;
+        }
+
         InventoryItem item = inventoryRepository.findById(inventoryItemId)
                 .orElseThrow(() -> new ResourceNotFoundException("Inventory item not found with id: " + inventoryItemId));
 
-        if (item.getRemainingQuantity() < quantityToReduce) {
-            throw new BusinessLogicException("Not enough quantity available. Requested: " +
-                    quantityToReduce + ", Available: " + item.getRemainingQuantity());
+        throw new BusinessLogicException("Not enough quantity available. Requested: " +
+                quantityToReduce + ", Available: " + item.getRemainingQuantity());
+    }
+
+    // Method to return quantity when a prescription needs less than before
+    public void restoreInventoryQuantity(Long inventoryItemId, int quantityToRestore) {
+        if (inventoryRepository.incrementRemainingQuantity(inventoryItemId, quantityToRestore) == 0) {
+            throw new ResourceNotFoundException("Inventory item not found with id: " + inventoryItemId);
+        }
+        stockLevels.returned(inventoryItemId, quantityToRestore);
+        stockMoved(inventoryItemId, inventoryRepository.findMedicineIdById(inventoryItemId),
+                StockMovementType.RETURN, quantityToRestore, null);
+        log.info("Restored {} units to inventory item: {}", quantityToRestore, inventoryItemId);
+    }
+
+    // Takes units from a batch the caller holds locked; the row is written by the flush at commit
+    public void dispenseLocked(InventoryItem batch, int quantity) {
+        batch.setRemainingQuantity(batch.getRemainingQuantity() - quantity);
+        stockLevels.dispensed(batch.getId(), quantity);
+        stockMoved(batch.getId(), batch.getMedicine().getId(), StockMovementType.DISPENSE, -quantity, null);
+    }
+
+    // Every change to a batch's remaining quantity lands here: one ledger row, a low stock recheck
+    // and, for dispensing and returns, the consumption forecast
+    private void stockMoved(Long inventoryItemId, Long medicineId, StockMovementType type, int quantity, String note) {
+        stockLedger.record(inventoryItemId, medicineId, type, quantity, note);
+        lowStockFlags.stockChanged(medicineId);
+        if (type == StockMovementType.DISPENSE || type == StockMovementType.RETURN) {
+            consumptionForecast.dispensed(medicineId, -quantity);
+        }
+    }
+
+    // Splits the quantity over non-expired batches of the medicine, earliest expiry first.
+    // The returned batches stay locked until the transaction ends and are decremented in memory.
+    public List<BatchAllocation> allocateByExpiry(Long medicineId, int quantity) {
+        LocalDate today = LocalDate.now();
+        List<InventoryItem> batches = List.of();
+
+        for (int attempt = 1; attempt <= MAX_ALLOCATION_ATTEMPTS; attempt++) {
+            batches = new ArrayList<>(inventoryRepository.lockBatchesForAllocation(medicineId, quantity, today));
+            // a concurrent dispenser may have drained a batch between ranking and locking, so recheck under the lock
+            batches.removeIf(batch -> batch.getRemainingQuantity() <= 0 || batch.getExpiryDate().isBefore(today));
+            if (batches.stream().mapToInt(InventoryItem::getRemainingQuantity).sum() >= quantity) {
+                break;
+            }
+            log.debug("Allocation attempt {} for medicine {} came up short, retrying", attempt, medicineId);
+        }
+
+        batches.sort(Comparator.comparing(InventoryItem::getExpiryDate).thenComparing(InventoryItem::getId));
+
+        List<BatchAllocation> allocations = new ArrayList<>();
+        int outstanding = quantity;
+        for (InventoryItem batch : batches) {
+            if (outstanding == 0) {
+                break;
+            }
+            int taken = Math.min(outstanding, batch.getRemainingQuantity());
+            dispenseLocked(batch, taken);
+            allocations.add(new BatchAllocation(batch, taken));
+            outstanding -= taken;
+        }
+
+        if (outstanding > 0) {
+            String medicineName = medicineRepository.findById(medicineId)
+                    .map(Medicine::getName)
+                    .orElseThrow(() -> new ResourceNotFoundException("Medicine not found with id: " + medicineId));
+            throw new BusinessLogicException("Insufficient quantity available for " + medicineName +
+                    ". Available: " + (quantity - outstanding) + ", Requested total: " + quantity);
         }
 
-        item.setRemainingQuantity(item.getRemainingQuantity() - quantityToReduce);
-        inventoryRepository.save(item);
-        log.info("Reduced {} units from inventory for medicine: {}",
-                quantityToReduce, item.getMedicine().getName());
+        log.info("Allocated {} units of medicine {} across {} batches", quantity, medicineId, allocations.size());
+        return allocations;
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.codedulan.dms.service;
 
+import com.codedulan.dms.dto.AuthenticatedUser;
 import com.codedulan.dms.entity.Patient;
 import com.codedulan.dms.entity.Users;
 import io.jsonwebtoken.Claims;
@@ -24,6 +25,8 @@ import java.util.function.Function;
 public class JWTUtils {
     private SecretKey Key;
     private static final long EXPIRATION_TIME = 86400000; // 24 hours
+    public static final long STREAM_TOKEN_EXPIRATION_TIME = 60000; // 1 minute
+    public static final String QUEUE_STREAM_PURPOSE = "queue-stream";
 
     public JWTUtils() {
         String secreteString = "5367566B59703373367639792F423F4528482B4D6251655468576D5A71347437"; // CAN BE CHANGE
@@ -63,6 +66,7 @@ public class JWTUtils {
         claims.put("role", "PATIENT");
         claims.put("name", patient.getFirstName());
         claims.put("email", patient.getEmail());
+        claims.put("patientId", patient.getPatientId());
 
         return Jwts.builder()
                 .claims(claims)
@@ -75,12 +79,41 @@ public class JWTUtils {
 
 
 
+    // Short-lived token for the daily queue stream, passed in the query string because EventSource
+    // cannot send an Authorization header. JWTAuthFilter accepts it on that route only.
+    public String generateQueueStreamToken(AuthenticatedUser user) {
+        HashMap<String, Object> claims = new HashMap<>();
+        claims.put("purpose", QUEUE_STREAM_PURPOSE);
+        claims.put("role", user.getRole());
+        claims.put("email", user.getEmail());
+        if (user.getPatientId() != null) {
+            claims.put("patientId", user.getPatientId());
+        }
+
+        return Jwts.builder()
+                .claims(claims)
+                .subject(user.getEmail())
+                .issuedAt(new Date(System.currentTimeMillis()))
+                .expiration(new Date(System.currentTimeMillis() + STREAM_TOKEN_EXPIRATION_TIME))
+                .signWith(Key)
+                .compact();
+    }
+
+    public String extractPurpose(Claims claims) {
+        return claims.get("purpose", String.class);
+    }
+
     public String extractUsername(String token) {
         return extractClaims(token, Claims::getSubject);
     }
 
     private <T> T extractClaims(String token, Function<Claims, T> claimsTFunction){
-        return claimsTFunction.apply(Jwts.parser().verifyWith(Key).build().parseSignedClaims(token).getPayload());
+        return claimsTFunction.apply(extractAllClaims(token));
+    }
+
+    // verifies the signature and expiry once; callers that need several claims should use this
+    public Claims extractAllClaims(String token) {
+        return Jwts.parser().verifyWith(Key).build().parseSignedClaims(token).getPayload();
     }
 
     public boolean isTokenValid(String token, UserDetails userDetails) {
@@ -88,16 +121,36 @@ public class JWTUtils {
         return(username.equals(userDetails.getUsername()) && !isTokenExpired(token));
     }
 
+    // same check against claims that were already parsed (and therefore already verified and unexpired)
+    public boolean isTokenValid(Claims claims, UserDetails userDetails) {
+        return claims.getSubject().equals(userDetails.getUsername()) && !claims.getExpiration().before(new Date());
+    }
+
     public boolean isTokenExpired(String token) {
         return extractClaims(token, Claims::getExpiration).before(new Date());
     }
 
     public String extractRole(String token) {
-        return extractClaims(token, claims -> {
-            String role = claims.get("role", String.class);
-            if (role != null) return role;
-            return claims.get("authorities", String.class);
-        });
+        return extractClaims(token, this::extractRole);
+    }
+
+    public String extractRole(Claims claims) {
+        String role = claims.get("role", String.class);
+        if (role != null) return role;
+        return claims.get("authorities", String.class);
+    }
+
+    public String extractEmail(Claims claims) {
+        String email = claims.get("email", String.class);
+        if (email != null && !email.isEmpty()) {
+            return email;
+        }
+        return claims.getSubject();
+    }
+
+    public Long extractPatientId(Claims claims) {
+        Object patientId = claims.get("patientId");
+        return patientId instanceof Number ? ((Number) patientId).longValue() : null;
     }
 
 
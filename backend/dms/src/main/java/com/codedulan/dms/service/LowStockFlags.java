@@ -0,0 +1,98 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.repository.InventoryRepository;
+import com.codedulan.dms.repository.MedicineRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Keeps Medicine.lowStock current. Medicines whose stock changes are collected per transaction and
+// recomputed in one UPDATE just before commit, so a bulk issue touching a medicine many times costs
+// one statement.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LowStockFlags {
+
+    private final MedicineRepository medicineRepository;
+    private final InventoryRepository inventoryRepository;
+
+    // the day every flag was last known to be current; null until the first full recompute succeeds
+    private volatile LocalDate currentAsOf;
+
+    @SuppressWarnings("unchecked")
+    public void stockChanged(Long medicineId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            medicineRepository.refreshLowStock(List.of(medicineId), LocalDate.now());
+            return;
+        }
+
+        Set<Long> pending = (Set<Long>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Set<Long> medicineIds = new TreeSet<>();
+            TransactionSynchronizationManager.bindResource(this, medicineIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    int updated = medicineRepository.refreshLowStock(medicineIds, LocalDate.now());
+                    log.debug("Refreshed low stock flags for {} medicines", updated);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(LowStockFlags.this);
+                }
+            });
+            pending = medicineIds;
+        }
+        pending.add(medicineId);
+    }
+
+    // the column starts out false on an existing database, so every flag is recomputed before the first request
+    @EventListener(ApplicationReadyEvent.class)
+    public void refreshAllOnStartup() {
+        try {
+            refreshAll();
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("Could not recompute low stock flags at startup, the next refreshExpired recomputes them all", e);
+        }
+    }
+
+    // every medicine; for startup and on demand, the daily refresh only needs refreshExpired
+    public int refreshAll() {
+        LocalDate today = LocalDate.now();
+        int updated = medicineRepository.refreshAllLowStock(today);
+        currentAsOf = today;
+        log.info("Recomputed low stock flags for {} medicines", updated);
+        return updated;
+    }
+
+    // Batches stop counting the day after their expiry date without any stock change, so only medicines
+    // with a batch that expired since the flags were last current need recomputing
+    public int refreshExpired() {
+        LocalDate since = currentAsOf;
+        if (since == null) {
+            return refreshAll();
+        }
+        LocalDate today = LocalDate.now();
+        if (!today.isAfter(since)) {
+            return 0;
+        }
+        List<Long> medicineIds = inventoryRepository.findMedicineIdsWithBatchesExpiringBetween(since, today);
+        int updated = medicineIds.isEmpty() ? 0 : medicineRepository.refreshLowStock(medicineIds, today);
+        currentAsOf = today;
+        log.info("Recomputed low stock flags for {} medicines with batches expired since {}", updated, since);
+        return updated;
+    }
+}
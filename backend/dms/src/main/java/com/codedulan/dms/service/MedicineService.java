@@ -21,6 +21,8 @@ import java.util.stream.Collectors;
 public class MedicineService {
 
     private final MedicineRepository medicineRepository;
+    private final InventoryService inventoryService;
+    private final LowStockFlags lowStockFlags;
 
     public List<MedicineDTO> getAllMedicines() {
         return medicineRepository.findAll().stream()
@@ -36,7 +38,22 @@ public class MedicineService {
 
     public List<MedicineDTO> searchMedicines(String query) {
         return medicineRepository.findByNameContainingIgnoreCase(query).stream()
-                .map(MedicineDTO::fromEntity)
+                .map(medicine -> {
+                    MedicineDTO dto = MedicineDTO.fromEntity(medicine);
+                    dto.setAvailableQuantity(inventoryService.getStockLevel(medicine.getId()).getAvailable());
+                    return dto;
+                })
+                .collect(Collectors.toList());
+    }
+
+    // Medicines flagged below their reorder threshold, read through the partial index
+    public List<MedicineDTO> getLowStockMedicines() {
+        return medicineRepository.findByLowStockTrueOrderByName().stream()
+                .map(medicine -> {
+                    MedicineDTO dto = MedicineDTO.fromEntity(medicine);
+                    dto.setAvailableQuantity(inventoryService.getStockLevel(medicine.getId()).getAvailable());
+                    return dto;
+                })
                 .collect(Collectors.toList());
     }
 
@@ -50,9 +67,13 @@ public class MedicineService {
                 .description(createDTO.getDescription())
                 .lethalDosagePerKg(createDTO.getLethalDosagePerKg())
                 .weight(createDTO.getWeight())  // Add the weight field
+                .reorderThreshold(createDTO.getReorderThreshold())
                 .build();
 
         Medicine savedMedicine = medicineRepository.save(medicine);
+        if (savedMedicine.getReorderThreshold() != null) {
+            lowStockFlags.stockChanged(savedMedicine.getId());
+        }
         return MedicineDTO.fromEntity(savedMedicine);
     }
 
@@ -73,6 +94,11 @@ public class MedicineService {
             medicine.setWeight(updateDTO.getWeight());
         }
 
+        if (updateDTO.getReorderThreshold() != null) {
+            medicine.setReorderThreshold(updateDTO.getReorderThreshold());
+            lowStockFlags.stockChanged(medicine.getId());
+        }
+
         Medicine updatedMedicine = medicineRepository.save(medicine);
         return MedicineDTO.fromEntity(updatedMedicine);
     }
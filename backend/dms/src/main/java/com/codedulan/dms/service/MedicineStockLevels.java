@@ -0,0 +1,206 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.StockLevelDTO;
+import com.codedulan.dms.entity.InventoryItem;
+import com.codedulan.dms.repository.InventoryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+// Per-medicine stock totals held in striped counters, so stock can be read without a query.
+// available: units in unexpired batches that no open transaction has taken
+// reserved: units taken by transactions that have not committed yet
+// expiring: committed units in batches that expire within EXPIRING_WINDOW_DAYS
+// Kept in step by InventoryService; rebuilt from the database at startup, nightly (which also drops
+// batches that expired) and on demand. Changes racing a rebuild may be lost until the next one.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MedicineStockLevels {
+
+    static final int EXPIRING_WINDOW_DAYS = 30;
+
+    private final InventoryRepository inventoryRepository;
+
+    private volatile Snapshot snapshot = new Snapshot(LocalDate.now());
+
+    public StockLevelDTO get(Long medicineId) {
+        Counters counters = snapshot.stockByMedicine.get(medicineId);
+        return counters != null ? counters.toDTO(medicineId) : new StockLevelDTO(medicineId, 0, 0, 0);
+    }
+
+    public List<StockLevelDTO> getAll() {
+        return snapshot.stockByMedicine.entrySet().stream()
+                .map(entry -> entry.getValue().toDTO(entry.getKey()))
+                .collect(Collectors.toList());
+    }
+
+    public long available(Long medicineId) {
+        Counters counters = snapshot.stockByMedicine.get(medicineId);
+        return counters != null ? Math.max(0, counters.available.sum()) : 0;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        try {
+            rebuild();
+        } catch (DataAccessException e) {
+            log.warn("Could not load stock levels at startup, they read as zero until the next rebuild", e);
+        }
+    }
+
+    @Scheduled(cron = "0 10 0 * * ?")
+    public void rebuild() {
+        LocalDate today = LocalDate.now();
+        Snapshot rebuilt = new Snapshot(today);
+        // one row per unexpired batch: id, medicine id, expiry date, remaining quantity
+        for (Object[] row : inventoryRepository.findUnexpiredBatchLevels(today)) {
+            Batch batch = new Batch((Long) row[1], (LocalDate) row[2]);
+            rebuilt.batches.put((Long) row[0], batch);
+            rebuilt.apply(batch.medicineId, rebuilt.contribution(batch.expiryDate, ((Number) row[3]).intValue()));
+        }
+        snapshot = rebuilt;
+        log.info("Rebuilt stock levels for {} medicines from {} batches",
+                rebuilt.stockByMedicine.size(), rebuilt.batches.size());
+    }
+
+    // a new batch, or units added to an existing one
+    public void received(InventoryItem batch, int quantity) {
+        Snapshot current = snapshot;
+        current.batches.put(batch.getId(), new Batch(batch.getMedicine().getId(), batch.getExpiryDate()));
+        onCommit(current, batch.getMedicine().getId(), current.contribution(batch.getExpiryDate(), quantity));
+    }
+
+    // units leave available straight away and are held as reserved until the transaction ends
+    public void dispensed(Long batchId, int quantity) {
+        Snapshot current = snapshot;
+        Batch batch = current.batches.get(batchId);
+        if (batch == null || !current.isUsable(batch.expiryDate)) {
+            return;
+        }
+        Counters counters = current.counters(batch.medicineId);
+        long expiring = current.isExpiring(batch.expiryDate) ? quantity : 0;
+        counters.available.add(-quantity);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            counters.expiring.add(-expiring);
+            return;
+        }
+        counters.reserved.add(quantity);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                counters.reserved.add(-quantity);
+                if (status == STATUS_COMMITTED) {
+                    counters.expiring.add(-expiring);
+                } else {
+                    counters.available.add(quantity);
+                }
+            }
+        });
+    }
+
+    public void returned(Long batchId, int quantity) {
+        Snapshot current = snapshot;
+        Batch batch = current.batches.get(batchId);
+        if (batch != null) {
+            onCommit(current, batch.medicineId, current.contribution(batch.expiryDate, quantity));
+        }
+    }
+
+    public void expiryChanged(InventoryItem batch, LocalDate previousExpiry) {
+        Snapshot current = snapshot;
+        int remaining = batch.getRemainingQuantity();
+        long[] before = current.contribution(previousExpiry, remaining);
+        long[] after = current.contribution(batch.getExpiryDate(), remaining);
+        current.batches.put(batch.getId(), new Batch(batch.getMedicine().getId(), batch.getExpiryDate()));
+        onCommit(current, batch.getMedicine().getId(), new long[]{after[0] - before[0], after[1] - before[1]});
+    }
+
+    public void removed(InventoryItem batch) {
+        Snapshot current = snapshot;
+        long[] contribution = current.contribution(batch.getExpiryDate(), batch.getRemainingQuantity());
+        onCommit(current, batch.getMedicine().getId(), new long[]{-contribution[0], -contribution[1]});
+        current.batches.remove(batch.getId());
+    }
+
+    private void onCommit(Snapshot current, Long medicineId, long[] delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            current.apply(medicineId, delta);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                current.apply(medicineId, delta);
+            }
+        });
+    }
+
+    private record Batch(Long medicineId, LocalDate expiryDate) {
+    }
+
+    private static final class Counters {
+        private final LongAdder available = new LongAdder();
+        private final LongAdder reserved = new LongAdder();
+        private final LongAdder expiring = new LongAdder();
+
+        // sums are read without a lock, so clamp the brief negatives a racing update can show
+        private StockLevelDTO toDTO(Long medicineId) {
+            return new StockLevelDTO(medicineId, Math.max(0, available.sum()), Math.max(0, reserved.sum()),
+                    Math.max(0, expiring.sum()));
+        }
+    }
+
+    // Everything a rebuild replaces; updates hold on to the snapshot they started with
+    private static final class Snapshot {
+        private final LocalDate today;
+        private final Map<Long, Counters> stockByMedicine = new ConcurrentHashMap<>();
+        private final Map<Long, Batch> batches = new ConcurrentHashMap<>();
+
+        private Snapshot(LocalDate today) {
+            this.today = today;
+        }
+
+        private Counters counters(Long medicineId) {
+            return stockByMedicine.computeIfAbsent(medicineId, id -> new Counters());
+        }
+
+        private boolean isUsable(LocalDate expiryDate) {
+            return !expiryDate.isBefore(today);
+        }
+
+        private boolean isExpiring(LocalDate expiryDate) {
+            return isUsable(expiryDate) && !expiryDate.isAfter(today.plusDays(EXPIRING_WINDOW_DAYS));
+        }
+
+        // what a quantity in a batch with this expiry adds to {available, expiring}
+        private long[] contribution(LocalDate expiryDate, int quantity) {
+            if (!isUsable(expiryDate)) {
+                return new long[]{0, 0};
+            }
+            return new long[]{quantity, isExpiring(expiryDate) ? quantity : 0};
+        }
+
+        private void apply(Long medicineId, long[] delta) {
+            if (delta[0] == 0 && delta[1] == 0) {
+                return;
+            }
+            Counters counters = counters(medicineId);
+            counters.available.add(delta[0]);
+            counters.expiring.add(delta[1]);
+        }
+    }
+}
@@ -28,6 +28,7 @@ public class NotificationService {
 
     private final NotificationRepository notificationRepository;
     private final InventoryRepository inventoryRepository;
+    private final LowStockFlags lowStockFlags;
 
     // Cache to prevent frequent notifications for the same items
     private final Map<String, LocalDateTime> lastNotificationMap = new ConcurrentHashMap<>();
@@ -85,7 +86,8 @@ public class NotificationService {
 
     //check for low stock items
     private void checkLowStockItems() {
-        List<InventoryItem> lowStockItems = inventoryRepository.findLowStockItems();
+        lowStockFlags.refreshExpired();
+        List<InventoryItem> lowStockItems = inventoryRepository.findLowStockItems(LocalDate.now());
 
         for (InventoryItem item : lowStockItems) {
             createLowStockNotificationIfNeeded(item);
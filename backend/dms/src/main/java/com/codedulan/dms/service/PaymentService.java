@@ -1,5 +1,6 @@
 package com.codedulan.dms.service;
 
+import com.codedulan.dms.dto.AuthenticatedUser;
 import com.codedulan.dms.dto.CreatePaymentDTO;
 import com.codedulan.dms.dto.PaymentDTO;
 import com.codedulan.dms.dto.UpdatePaymentDTO;
@@ -14,6 +15,7 @@ import com.codedulan.dms.repository.PrescriptionRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
@@ -30,8 +32,8 @@ public class PaymentService {
 
     private final PaymentRepository paymentRepository;
     private final PatientRepository patientRepository;
+    private final IdempotencyStore idempotencyStore;
     private final PrescriptionRepository prescriptionRepository;
-    private final JWTUtils jwtUtils;
 
     public List<PaymentDTO> getAllPayments() {
         return paymentRepository.findAll().stream()
@@ -86,18 +88,25 @@ public class PaymentService {
                 .collect(Collectors.toList());
     }
 
-    public List<PaymentDTO> getMyPayments(String token) {
-        String email = jwtUtils.extractEmail(token);
-        Patient patient = patientRepository.findByEmail(email)
-                .orElseThrow(() -> new ResourceNotFoundException("Patient not found with email: " + email));
-
-        return paymentRepository.findByPatient(patient).stream()
+    public List<PaymentDTO> getMyPayments(AuthenticatedUser user) {
+        return paymentRepository.findByPatientPatientId(user.requirePatientId()).stream()
                 .map(PaymentDTO::fromEntity)
                 .collect(Collectors.toList());
     }
 
     @Transactional
     public PaymentDTO createPayment(CreatePaymentDTO createDTO) {
+        return doCreatePayment(createDTO);
+    }
+
+    // A retry carrying the same Idempotency-Key gets the first payment back instead of "Payment already exists".
+    // The transaction is opened by IdempotencyStore once the key is claimed.
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public PaymentDTO createPayment(CreatePaymentDTO createDTO, String idempotencyKey) {
+        return idempotencyStore.execute("payment", idempotencyKey, createDTO, () -> doCreatePayment(createDTO));
+    }
+
+    private PaymentDTO doCreatePayment(CreatePaymentDTO createDTO) {
         Patient patient = patientRepository.findById(createDTO.getPatientId())
                 .orElseThrow(() -> new ResourceNotFoundException("Patient not found with id: " + createDTO.getPatientId()));
 
@@ -0,0 +1,109 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.PrescriptionDTO;
+import com.codedulan.dms.dto.PrescriptionItemDTO;
+import com.codedulan.dms.entity.Prescription;
+import com.codedulan.dms.exception.BusinessLogicException;
+import com.codedulan.dms.repository.PrescriptionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+// Writes prescription history straight from a database cursor to the response, one prescription at a
+// time, so an annual export needs no more memory than a single prescription and its items.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PrescriptionExportService {
+
+    public enum Format { NDJSON, CSV }
+
+    static final String CSV_HEADER = "prescription_id,issue_date,patient_id,patient_name,disease,"
+            + "medicine,batch_number,quantity_per_dose,dosage_instructions,days_supply,dispensed_quantity";
+
+    private final PrescriptionRepository prescriptionRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    public static Format parseFormat(String format) {
+        try {
+            return Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BusinessLogicException("Unsupported export format: " + format);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public long export(LocalDate startDate, LocalDate endDate, Format format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == Format.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        long rows = 0;
+        try (Stream<Prescription> prescriptions = prescriptionRepository.streamByIssueDateBetween(
+                startDate.atStartOfDay(), endDate.atTime(LocalTime.MAX))) {
+            Iterator<Prescription> iterator = prescriptions.iterator();
+            while (iterator.hasNext()) {
+                Prescription prescription = iterator.next();
+                PrescriptionDTO dto = PrescriptionDTO.fromEntity(prescription);
+                // the DTO holds everything needed, so drop the entity and its items from the session
+                entityManager.detach(prescription);
+
+                if (format == Format.NDJSON) {
+                    writer.write(objectMapper.writeValueAsString(dto));
+                    writer.write('\n');
+                } else {
+                    writeCsvRows(writer, dto);
+                }
+                rows++;
+            }
+        }
+
+        writer.flush();
+        log.info("Exported {} prescriptions between {} and {} as {}", rows, startDate, endDate, format);
+        return rows;
+    }
+
+    // one row per prescription item, repeating the prescription columns
+    private void writeCsvRows(Writer writer, PrescriptionDTO dto) throws IOException {
+        String prefix = csv(dto.getId()) + ',' + csv(dto.getIssueDate()) + ',' + csv(dto.getPatientId()) + ','
+                + csv(dto.getPatientName()) + ',' + csv(dto.getDiseaseName() != null ? dto.getDiseaseName() : dto.getCustomDisease());
+        if (dto.getItems().isEmpty()) {
+            writer.write(prefix + ",,,,,,\n");
+            return;
+        }
+        for (PrescriptionItemDTO item : dto.getItems()) {
+            writer.write(prefix + ',' + csv(item.getMedicineName()) + ',' + csv(item.getBatchNumber()) + ','
+                    + csv(item.getQuantity()) + ',' + csv(item.getDosageInstructions()) + ','
+                    + csv(item.getDaysSupply()) + ',' + csv(item.getDispensedQuantity()) + '\n');
+        }
+    }
+
+    private static String csv(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
@@ -7,14 +7,29 @@ import com.codedulan.dms.exception.ResourceNotFoundException;
 import com.codedulan.dms.repository.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -27,9 +42,13 @@ public class PrescriptionService {
     private final PatientRepository patientRepository;
     private final InventoryRepository inventoryRepository;
     private final InventoryService inventoryService;
+    private final DosageParser dosageParser;
+    private final IdempotencyStore idempotencyStore;
 
     private final DiseaseRepository diseaseRepository;
-    private final JWTUtils jwtUtils;
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
 
     public List<PrescriptionDTO> getAllPrescriptions() {
         return prescriptionRepository.findAll().stream()
@@ -70,59 +89,189 @@ public class PrescriptionService {
                 .collect(Collectors.toList());
     }
 
-    public List<PrescriptionDTO> getMyPrescriptions(String authHeader) {
+    // Keyset-paginated timeline, newest first. The cursor is an opaque token for the (issueDate, id)
+    // of the last prescription on the previous page.
+    public PrescriptionPage getPatientTimeline(Long patientId, String cursor, Integer size) {
+        if (!patientRepository.existsById(patientId)) {
+            throw new ResourceNotFoundException("Patient not found with id: " + patientId);
+        }
+        return loadTimelinePage(patientId, cursor, size);
+    }
 
-        String token = authHeader.substring(7).trim();
+    public PrescriptionPage getMyTimeline(AuthenticatedUser user, String cursor, Integer size) {
+        return loadTimelinePage(user.requirePatientId(), cursor, size);
+    }
 
-        String email = jwtUtils.extractEmail(token);
-        Patient patient = patientRepository.findByEmail(email)
-                .orElseThrow(() -> new ResourceNotFoundException("Patient not found with email: " + email));
+    private PrescriptionPage loadTimelinePage(Long patientId, String cursor, Integer size) {
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        Pageable window = PageRequest.ofSize(pageSize + 1);
+
+        // ids first, so items are only fetched for the prescriptions on this page
+        List<Long> ids;
+        if (cursor == null || cursor.isBlank()) {
+            ids = prescriptionRepository.findTimelineIds(patientId, window);
+        } else {
+            String[] position = decodeCursor(cursor);
+            ids = prescriptionRepository.findTimelineIdsAfter(patientId,
+                    LocalDateTime.parse(position[0]), Long.valueOf(position[1]), window);
+        }
 
-        return prescriptionRepository.findByPatient(patient).stream()
+        boolean hasMore = ids.size() > pageSize;
+        if (hasMore) {
+            ids = ids.subList(0, pageSize);
+        }
+        if (ids.isEmpty()) {
+            return new PrescriptionPage(new ArrayList<>(), null);
+        }
+
+        List<PrescriptionDTO> page = prescriptionRepository.findByIdInOrderByIssueDateDescIdDesc(ids).stream()
+                .map(PrescriptionDTO::fromEntity)
+                .collect(Collectors.toList());
+        String nextCursor = hasMore ? encodeCursor(page.get(page.size() - 1)) : null;
+
+        log.info("Found {} prescriptions on timeline page for patient {}, more: {}", page.size(), patientId, hasMore);
+        return new PrescriptionPage(page, nextCursor);
+    }
+
+    private String encodeCursor(PrescriptionDTO last) {
+        String position = last.getIssueDate() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String[] decodeCursor(String cursor) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            if (position.length != 2) {
+                throw new IllegalArgumentException("Expected 2 cursor fields");
+            }
+            LocalDateTime.parse(position[0]);
+            Long.parseLong(position[1]);
+            return position;
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            log.warn("Rejected malformed prescription cursor: {}", cursor);
+            throw new BusinessLogicException("Invalid page cursor");
+        }
+    }
+
+    public List<PrescriptionDTO> getMyPrescriptions(AuthenticatedUser user) {
+        Long patientId = user.requirePatientId();
+
+        return prescriptionRepository.findByPatientPatientId(patientId).stream()
                 .map(PrescriptionDTO::fromEntity)
                 .collect(Collectors.toList());
     }
 
-    public List<PrescriptionDTO> getMyPrescriptionsByDateRange(LocalDate startDate, LocalDate endDate, String token) {
-        String email = jwtUtils.extractEmail(token);
-        Patient patient = patientRepository.findByEmail(email)
-                .orElseThrow(() -> new ResourceNotFoundException("Patient not found with email: " + email));
+    public List<PrescriptionDTO> getMyPrescriptionsByDateRange(LocalDate startDate, LocalDate endDate, AuthenticatedUser user) {
+        Long patientId = user.requirePatientId();
 
         LocalDateTime start = startDate != null ? startDate.atStartOfDay() : LocalDate.now().minusMonths(1).atStartOfDay();
         LocalDateTime end = endDate != null ? endDate.atTime(LocalTime.MAX) : LocalDate.now().atTime(LocalTime.MAX);
 
-        return prescriptionRepository.findByPatientAndIssueDateBetweenOrderByIssueDateDesc(patient, start, end).stream()
+        return prescriptionRepository.findByPatientPatientIdAndIssueDateBetweenOrderByIssueDateDesc(patientId, start, end).stream()
                 .map(PrescriptionDTO::fromEntity)
                 .collect(Collectors.toList());
     }
 
+    // Takes a line's share from the medicine's allocations, splitting a batch between lines when needed
+    private List<BatchAllocation> takeAllocations(Deque<BatchAllocation> allocations, int quantity) {
+        List<BatchAllocation> portions = new ArrayList<>();
+        int outstanding = quantity;
+        while (outstanding > 0) {
+            BatchAllocation next = allocations.peekFirst();
+            int taken = Math.min(outstanding, next.getQuantity());
+            portions.add(new BatchAllocation(next.getInventoryItem(), taken));
+            if (taken == next.getQuantity()) {
+                allocations.pollFirst();
+            } else {
+                next.setQuantity(next.getQuantity() - taken);
+            }
+            outstanding -= taken;
+        }
+        return portions;
+    }
 
-    private int calculateTotalQuantity(String dosageInstructions, int quantityPerDose, int daysSupply) {
-        // Default to 1 dose per day if no instructions
-        int dosesPerDay = 1;
+    private Map<Long, InventoryItem> lockInventoryItems(Collection<Long> inventoryItemIds) {
+        Map<Long, InventoryItem> inventoryById = new HashMap<>();
+        if (inventoryItemIds.isEmpty()) {
+            return inventoryById;
+        }
+        for (InventoryItem item : inventoryRepository.findAllByIdForUpdate(inventoryItemIds)) {
+            inventoryById.put(item.getId(), item);
+        }
+        for (Long id : inventoryItemIds) {
+            if (!inventoryById.containsKey(id)) {
+                throw new ResourceNotFoundException("Inventory item not found with id: " + id);
+            }
+        }
+        return inventoryById;
+    }
 
-        if (dosageInstructions != null) {
-            String instruction = dosageInstructions.toUpperCase();
+    // Parsed once per line; the schedule is stored on the item so totals are not re-derived from text
+    private int calculateTotalQuantity(DosageSchedule schedule, Integer quantityPerDose, Integer daysSupply) {
+        return dosageParser.totalQuantity(schedule, quantityPerDose, daysSupply);
+    }
 
-            if (instruction.contains("OD") || instruction.contains("ONCE DAILY") ||
-                    instruction.contains("MANE") || instruction.contains("NOCTE")) {
-                dosesPerDay = 1;
-            } else if (instruction.contains("BD") || instruction.contains("TWICE DAILY")) {
-                dosesPerDay = 2;
-            } else if (instruction.contains("TDS") || instruction.contains("THREE TIMES DAILY")) {
-                dosesPerDay = 3;
-            } else if (instruction.contains("QDS") || instruction.contains("QID") ||
-                    instruction.contains("FOUR TIMES DAILY")) {
-                dosesPerDay = 4;
-            }
+    // The items one prescribed line was dispensed as: the item alone when it holds the whole line, otherwise
+    // the items of this prescription with the same medicine and dosage, provided they add up to exactly one line
+    private List<PrescriptionItem> lineItemsOf(Prescription prescription, PrescriptionItem item, int lineTotal) {
+        if (item.getDispensedQuantity() == null || item.getDispensedQuantity() == lineTotal) {
+            return List.of(item);
+        }
+        Long medicineId = item.getInventoryItem().getMedicine().getId();
+        List<PrescriptionItem> lineItems = prescription.getPrescriptionItems().stream()
+                .filter(pi -> pi.getDispensedQuantity() != null
+                        && pi.getInventoryItem().getMedicine().getId().equals(medicineId)
+                        && Objects.equals(pi.getQuantity(), item.getQuantity())
+                        && Objects.equals(pi.getDosageInstructions(), item.getDosageInstructions())
+                        && Objects.equals(pi.getDaysSupply(), item.getDaysSupply()))
+                .collect(Collectors.toList());
+        if (lineItems.stream().mapToInt(PrescriptionItem::getDispensedQuantity).sum() != lineTotal) {
+            throw new BusinessLogicException("Prescription item " + item.getId() + " is part of a line that cannot be " +
+                    "told apart from other items with the same medicine and dosage");
         }
+        return lineItems;
+    }
 
-        // Calculate total: quantity per dose * doses per day * days
-        return quantityPerDose * dosesPerDay * daysSupply;
+    // Gives units back to the line's batches, latest expiry first, dropping items left with nothing dispensed
+    private void returnFromLine(Prescription prescription, List<PrescriptionItem> lineItems, int quantity) {
+        List<PrescriptionItem> byLatestExpiry = new ArrayList<>(lineItems);
+        byLatestExpiry.sort(Comparator.comparing((PrescriptionItem pi) -> pi.getInventoryItem().getExpiryDate()).reversed());
+
+        int outstanding = quantity;
+        int kept = lineItems.size();
+        for (PrescriptionItem lineItem : byLatestExpiry) {
+            if (outstanding == 0) {
+                break;
+            }
+            // items saved before dispensed quantities were stored are always a whole line on their own
+            int dispensed = lineItem.getDispensedQuantity() != null ? lineItem.getDispensedQuantity() : outstanding;
+            int returned = Math.min(outstanding, dispensed);
+            inventoryService.restoreInventoryQuantity(lineItem.getInventoryItem().getId(), returned);
+            outstanding -= returned;
+
+            if (lineItem.getDispensedQuantity() != null) {
+                lineItem.setDispensedQuantity(dispensed - returned);
+                if (dispensed == returned && kept > 1) {
+                    prescription.getPrescriptionItems().remove(lineItem);
+                    kept--;
+                }
+            }
+        }
     }
 
     @Transactional
     public PrescriptionDTO createPrescription(CreatePrescriptionDTO createDTO) {
+        return doCreatePrescription(createDTO);
+    }
+
+    // A retry carrying the same Idempotency-Key gets the first result back without touching stock again;
+    // the work runs in the transaction IdempotencyStore opens for it
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public PrescriptionDTO createPrescription(CreatePrescriptionDTO createDTO, String idempotencyKey) {
+        return idempotencyStore.execute("prescription", idempotencyKey, createDTO, () -> doCreatePrescription(createDTO));
+    }
+
+    private PrescriptionDTO doCreatePrescription(CreatePrescriptionDTO createDTO) {
         Patient patient = patientRepository.findById(createDTO.getPatientId())
                 .orElseThrow(() -> new ResourceNotFoundException("Patient not found with id: " + createDTO.getPatientId()));
 
@@ -143,53 +292,91 @@ public class PrescriptionService {
             prescription.setCustomDisease(createDTO.getCustomDisease().trim());
         }
 
-        Prescription savedPrescription = prescriptionRepository.save(prescription);
-
-        // Process each prescription item
+        // Total units needed per batch and per FEFO-allocated medicine; either may appear on more than one line
+        Map<Long, Integer> totalsByInventoryId = new LinkedHashMap<>();
+        Map<Long, Integer> totalsByMedicineId = new TreeMap<>();
+        List<DosageSchedule> schedules = new ArrayList<>(createDTO.getItems().size());
+        List<Integer> lineTotals = new ArrayList<>(createDTO.getItems().size());
         for (CreatePrescriptionItemDTO itemDTO : createDTO.getItems()) {
-            InventoryItem inventoryItem = inventoryRepository.findById(itemDTO.getInventoryItemId())
-                    .orElseThrow(() -> new ResourceNotFoundException("Inventory item not found with id: " + itemDTO.getInventoryItemId()));
-
-            // Calculate total quantity based on dosage instructions and days supply
-            int quantityPerDose = itemDTO.getQuantity();
-            int daysSupply = itemDTO.getDaysSupply();
-            String dosageInstructions = itemDTO.getDosageInstructions();
+            DosageSchedule schedule = dosageParser.parse(itemDTO.getDosageInstructions());
+            int totalQuantityNeeded = calculateTotalQuantity(schedule, itemDTO.getQuantity(), itemDTO.getDaysSupply());
+            schedules.add(schedule);
+            lineTotals.add(totalQuantityNeeded);
+            if (itemDTO.getInventoryItemId() != null) {
+                totalsByInventoryId.merge(itemDTO.getInventoryItemId(), totalQuantityNeeded, Integer::sum);
+            } else if (itemDTO.getMedicineId() != null) {
+                if (totalQuantityNeeded <= 0) {
+                    throw new BusinessLogicException("Prescription item for medicine " + itemDTO.getMedicineId() +
+                            " does not need any units");
+                }
+                totalsByMedicineId.merge(itemDTO.getMedicineId(), totalQuantityNeeded, Integer::sum);
+            } else {
+                throw new BusinessLogicException("Each prescription item needs an inventory item or a medicine");
+            }
+        }
 
-            int totalQuantityNeeded = calculateTotalQuantity(dosageInstructions, quantityPerDose, daysSupply);
+        // One SELECT ... FOR UPDATE for every row instead of a findById per line
+        Map<Long, InventoryItem> inventoryById = lockInventoryItems(totalsByInventoryId.keySet());
 
-            // Check if there is enough quantity available
-            if (inventoryItem.getRemainingQuantity() < totalQuantityNeeded) {
+        // Validate everything before touching stock so a failing line leaves no partial decrements behind
+        for (Map.Entry<Long, Integer> entry : totalsByInventoryId.entrySet()) {
+            InventoryItem inventoryItem = inventoryById.get(entry.getKey());
+            if (inventoryItem.getRemainingQuantity() < entry.getValue()) {
                 throw new BusinessLogicException("Insufficient quantity available for " +
                         inventoryItem.getMedicine().getName() + ". Available: " +
-                        inventoryItem.getRemainingQuantity() + ", Requested total: " + totalQuantityNeeded +
-                        " (Qty per dose: " + quantityPerDose +
-                        ", Dosage: " + dosageInstructions +
-                        ", Days: " + daysSupply + ")");
+                        inventoryItem.getRemainingQuantity() + ", Requested total: " + entry.getValue());
             }
+        }
 
-            // Create prescription item
-            PrescriptionItem item = PrescriptionItem.builder()
-                    .prescription(savedPrescription)
-                    .inventoryItem(inventoryItem)
-                    .quantity(quantityPerDose)
-                    .dosageInstructions(dosageInstructions)
-                    .daysSupply(daysSupply)
-                    .build();
+        // The rows are locked and managed, so the decrements are written by the flush at commit
+        for (Map.Entry<Long, Integer> entry : totalsByInventoryId.entrySet()) {
+            InventoryItem inventoryItem = inventoryById.get(entry.getKey());
+            inventoryService.dispenseLocked(inventoryItem, entry.getValue());
+        }
+
+        // One allocation per medicine, in medicine id order so concurrent prescriptions lock consistently
+        Map<Long, Deque<BatchAllocation>> allocationsByMedicineId = new HashMap<>();
+        for (Map.Entry<Long, Integer> entry : totalsByMedicineId.entrySet()) {
+            allocationsByMedicineId.put(entry.getKey(),
+                    new ArrayDeque<>(inventoryService.allocateByExpiry(entry.getKey(), entry.getValue())));
+        }
+
+        for (int line = 0; line < createDTO.getItems().size(); line++) {
+            CreatePrescriptionItemDTO itemDTO = createDTO.getItems().get(line);
+            int quantityPerDose = itemDTO.getQuantity();
+            Integer daysSupply = itemDTO.getDaysSupply();
+            String dosageInstructions = itemDTO.getDosageInstructions();
+            int totalQuantityNeeded = lineTotals.get(line);
 
-            savedPrescription.getPrescriptionItems().add(item);
+            List<BatchAllocation> portions = itemDTO.getInventoryItemId() != null
+                    ? List.of(new BatchAllocation(inventoryById.get(itemDTO.getInventoryItemId()), totalQuantityNeeded))
+                    : takeAllocations(allocationsByMedicineId.get(itemDTO.getMedicineId()), totalQuantityNeeded);
+
+            // Create one prescription item per batch the line draws from
+            for (BatchAllocation portion : portions) {
+                PrescriptionItem item = PrescriptionItem.builder()
+                        .prescription(prescription)
+                        .inventoryItem(portion.getInventoryItem())
+                        .quantity(quantityPerDose)
+                        .dosageInstructions(dosageInstructions)
+                        .daysSupply(daysSupply)
+                        .dosageSchedule(schedules.get(line).toBuilder().build())
+                        .dispensedQuantity(portion.getQuantity())
+                        .build();
 
-            // Reduce inventory quantity using the TOTAL quantity needed
-            inventoryService.reduceInventoryQuantity(inventoryItem.getId(), totalQuantityNeeded);
+                prescription.getPrescriptionItems().add(item);
+            }
 
-            log.info("Prescribed {} of {} for {} days (total: {})",
+            log.info("Prescribed {} of {} for {} days (total: {}, batches: {})",
                     quantityPerDose,
-                    inventoryItem.getMedicine().getName(),
+                    portions.get(0).getInventoryItem().getMedicine().getName(),
                     daysSupply,
-                    totalQuantityNeeded);
+                    totalQuantityNeeded,
+                    portions.size());
         }
 
-        // Save the updated prescription with items
-        Prescription completePrescription = prescriptionRepository.save(savedPrescription);
+        // Items cascade from the prescription, so a single save covers them
+        Prescription completePrescription = prescriptionRepository.save(prescription);
         log.info("Created prescription for patient: {}", patient.getFirstName() + " " + patient.getLastName());
 
         return PrescriptionDTO.fromEntity(completePrescription);
@@ -214,47 +401,49 @@ public class PrescriptionService {
                         .findFirst()
                         .orElseThrow(() -> new ResourceNotFoundException("Prescription item not found: " + itemDTO.getId()));
 
-                // Calculate inventory adjustment
-                int oldTotalQty = calculateTotalQuantity(
-                        itemDTO.getOldDosageInstructions(),
-                        itemDTO.getOldQuantity(),
-                        itemDTO.getOldDaysSupply()
-                );
-
-                int newTotalQty = calculateTotalQuantity(
-                        itemDTO.getDosageInstructions(),
-                        itemDTO.getQuantity(),
-                        itemDTO.getDaysSupply()
-                );
-
-                // Update the item
-                item.setQuantity(itemDTO.getQuantity());
-                item.setDosageInstructions(itemDTO.getDosageInstructions());
-                item.setDaysSupply(itemDTO.getDaysSupply());
+                // Calculate inventory adjustment; items saved before parsing was stored fall back to the old text
+                int oldLineTotal = item.getDosageSchedule() != null
+                        ? calculateTotalQuantity(item.getDosageSchedule(), item.getQuantity(), item.getDaysSupply())
+                        : calculateTotalQuantity(dosageParser.parse(itemDTO.getOldDosageInstructions()),
+                                itemDTO.getOldQuantity(), itemDTO.getOldDaysSupply());
+
+                DosageSchedule newSchedule = dosageParser.parse(itemDTO.getDosageInstructions());
+                int newTotalQty = calculateTotalQuantity(newSchedule, itemDTO.getQuantity(), itemDTO.getDaysSupply());
+
+                // A line prescribed by medicine may have been split over several batches; the edit applies to the whole line
+                List<PrescriptionItem> lineItems = lineItemsOf(prescription, item, oldLineTotal);
+                int oldTotalQty = item.getDispensedQuantity() != null
+                        ? lineItems.stream().mapToInt(PrescriptionItem::getDispensedQuantity).sum()
+                        : oldLineTotal;
+
+                // Update the items
+                for (PrescriptionItem lineItem : lineItems) {
+                    lineItem.setQuantity(itemDTO.getQuantity());
+                    lineItem.setDosageInstructions(itemDTO.getDosageInstructions());
+                    lineItem.setDaysSupply(itemDTO.getDaysSupply());
+                    lineItem.setDosageSchedule(newSchedule.toBuilder().build());
+                }
 
                 // Adjust inventory if needed
-                if (newTotalQty != oldTotalQty) {
+                if (newTotalQty > oldTotalQty) {
+                    // Need more inventory, taken from the batch of the item that was edited
                     InventoryItem inventoryItem = item.getInventoryItem();
+                    int additionalQty = newTotalQty - oldTotalQty;
+
+                    // Check if there's enough
+                    if (inventoryItem.getRemainingQuantity() < additionalQty) {
+                        throw new BusinessLogicException("Not enough inventory for " +
+                                inventoryItem.getMedicine().getName() + ". Available: " +
+                                inventoryItem.getRemainingQuantity() + ", Additional needed: " + additionalQty);
+                    }
 
-                    if (newTotalQty > oldTotalQty) {
-                        // Need more inventory
-                        int additionalQty = newTotalQty - oldTotalQty;
-
-                        // Check if there's enough
-                        if (inventoryItem.getRemainingQuantity() < additionalQty) {
-                            throw new BusinessLogicException("Not enough inventory for " +
-                                    inventoryItem.getMedicine().getName() + ". Available: " +
-                                    inventoryItem.getRemainingQuantity() + ", Additional needed: " + additionalQty);
-                        }
-
-                        // Reduce additional inventory
-                        inventoryService.reduceInventoryQuantity(inventoryItem.getId(), additionalQty);
-                    } else if (newTotalQty < oldTotalQty) {
-                        // Return inventory
-                        int returnQty = oldTotalQty - newTotalQty;
-                        inventoryItem.setRemainingQuantity(inventoryItem.getRemainingQuantity() + returnQty);
-                        inventoryRepository.save(inventoryItem);
+                    // Reduce additional inventory
+                    inventoryService.reduceInventoryQuantity(inventoryItem.getId(), additionalQty);
+                    if (item.getDispensedQuantity() != null) {
+                        item.setDispensedQuantity(item.getDispensedQuantity() + additionalQty);
                     }
+                } else if (newTotalQty < oldTotalQty) {
+                    returnFromLine(prescription, lineItems, oldTotalQty - newTotalQty);
                 }
             }
         }
@@ -262,15 +451,15 @@ public class PrescriptionService {
         // Handle new items (similar to createPrescription logic)
         if (updateDTO.getNewItems() != null && !updateDTO.getNewItems().isEmpty()) {
             for (CreatePrescriptionItemDTO itemDTO : updateDTO.getNewItems()) {
+                if (itemDTO.getInventoryItemId() == null) {
+                    throw new BusinessLogicException("Items added to an existing prescription must name an inventory item");
+                }
                 InventoryItem inventoryItem = inventoryRepository.findById(itemDTO.getInventoryItemId())
                         .orElseThrow(() -> new ResourceNotFoundException("Inventory item not found: " + itemDTO.getInventoryItemId()));
 
                 // Calculate total quantity
-                int totalQtyNeeded = calculateTotalQuantity(
-                        itemDTO.getDosageInstructions(),
-                        itemDTO.getQuantity(),
-                        itemDTO.getDaysSupply()
-                );
+                DosageSchedule schedule = dosageParser.parse(itemDTO.getDosageInstructions());
+                int totalQtyNeeded = calculateTotalQuantity(schedule, itemDTO.getQuantity(), itemDTO.getDaysSupply());
 
                 // Check if there is enough inventory
                 if (inventoryItem.getRemainingQuantity() < totalQtyNeeded) {
@@ -286,6 +475,8 @@ public class PrescriptionService {
                         .quantity(itemDTO.getQuantity())
                         .dosageInstructions(itemDTO.getDosageInstructions())
                         .daysSupply(itemDTO.getDaysSupply())
+                        .dosageSchedule(schedule)
+                        .dispensedQuantity(totalQtyNeeded)
                         .build();
 
                 prescription.getPrescriptionItems().add(newItem);
@@ -10,8 +10,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,6 +30,9 @@ public class PrescriptionTemplateService {
     private final PrescriptionTemplateRepository templateRepository;
     private final PrescriptionTemplateItemRepository templateItemRepository;
     private final MedicineRepository medicineRepository;
+    private final InventoryRepository inventoryRepository;
+    private final PrescriptionService prescriptionService;
+    private final DosageParser dosageParser;
 
     public List<PrescriptionTemplateDTO> getAllTemplates() {
         return templateRepository.findAllByOrderByTemplateNameAsc().stream()
@@ -151,6 +161,7 @@ public class PrescriptionTemplateService {
                 .map(item -> {
 
                     CreatePrescriptionItemDTO prescriptionItem = new CreatePrescriptionItemDTO();
+                    prescriptionItem.setMedicineId(item.getMedicine().getId());
                     prescriptionItem.setQuantity(item.getQuantity());
                     prescriptionItem.setDosageInstructions(item.getDosageInstructions());
                     prescriptionItem.setDaysSupply(item.getDaysSupply());
@@ -163,13 +174,147 @@ public class PrescriptionTemplateService {
         prescriptionDTO.setItems(items);
 
         //add notes about the condition from the template if available
+        prescriptionDTO.setPrescriptionNotes(templateNotes(template));
+
+        return prescriptionDTO;
+    }
+
+    // Resolves every template line to batches with FEFO using one query for all of the template's medicines.
+    // Shortages are reported before anything is written; with create set and enough stock the prescription
+    // is issued in the same transaction, where the batches are allocated again under row locks.
+    @Transactional
+    public TemplateApplicationDTO applyTemplate(Long templateId, ApplyTemplateRequest request) {
+        PrescriptionTemplate template = templateRepository.findById(templateId)
+                .orElseThrow(() -> new ResourceNotFoundException("Prescription template not found with id: " + templateId));
+
+        TreeSet<Long> medicineIds = template.getTemplateItems().stream()
+                .map(item -> item.getMedicine().getId())
+                .collect(Collectors.toCollection(TreeSet::new));
+
+        // the preview works on plain rows, never on managed batches that creating would later lock and write
+        Map<Long, Deque<PreviewBatch>> batchesByMedicine = new HashMap<>();
+        Map<Long, Integer> remainingByBatch = new HashMap<>();
+        Map<Long, Integer> availableByMedicine = new HashMap<>();
+        if (!medicineIds.isEmpty()) {
+            // one row per batch: id, medicine id, batch number, expiry date, remaining quantity
+            for (Object[] row : inventoryRepository.findUsableBatchLevelsForMedicines(medicineIds, LocalDate.now())) {
+                PreviewBatch batch = new PreviewBatch((Long) row[0], (String) row[2], (LocalDate) row[3]);
+                Long medicineId = (Long) row[1];
+                int remaining = (Integer) row[4];
+                batchesByMedicine.computeIfAbsent(medicineId, id -> new ArrayDeque<>()).addLast(batch);
+                remainingByBatch.put(batch.id(), remaining);
+                availableByMedicine.merge(medicineId, remaining, Integer::sum);
+            }
+        }
+
+        List<ResolvedTemplateItemDTO> resolvedItems = new ArrayList<>();
+        List<CreatePrescriptionItemDTO> prescriptionItems = new ArrayList<>();
+        Map<Long, Integer> requestedByMedicine = new LinkedHashMap<>();
+
+        for (PrescriptionTemplateItem item : template.getTemplateItems()) {
+            Medicine medicine = item.getMedicine();
+            int total = dosageParser.totalQuantity(
+                    dosageParser.parse(item.getDosageInstructions()), item.getQuantity(), item.getDaysSupply());
+            requestedByMedicine.merge(medicine.getId(), total, Integer::sum);
+
+            List<ResolvedTemplateItemDTO.PlannedBatch> planned = new ArrayList<>();
+            Deque<PreviewBatch> batches = batchesByMedicine.getOrDefault(medicine.getId(), new ArrayDeque<>());
+            int outstanding = total;
+            while (outstanding > 0 && !batches.isEmpty()) {
+                PreviewBatch batch = batches.peekFirst();
+                int taken = Math.min(outstanding, remainingByBatch.get(batch.id()));
+                planned.add(new ResolvedTemplateItemDTO.PlannedBatch(
+                        batch.id(), batch.batchNumber(), batch.expiryDate(), taken));
+                remainingByBatch.merge(batch.id(), -taken, Integer::sum);
+                if (remainingByBatch.get(batch.id()) == 0) {
+                    batches.pollFirst();
+                }
+                outstanding -= taken;
+            }
+
+            resolvedItems.add(ResolvedTemplateItemDTO.builder()
+                    .medicineId(medicine.getId())
+                    .medicineName(medicine.getName())
+                    .quantity(item.getQuantity())
+                    .dosageInstructions(item.getDosageInstructions())
+                    .daysSupply(item.getDaysSupply())
+                    .totalQuantity(total)
+                    .batches(planned)
+                    .build());
+
+            // a line covered by one batch names it; otherwise the medicine is allocated FEFO on submit
+            CreatePrescriptionItemDTO prescriptionItem = new CreatePrescriptionItemDTO();
+            prescriptionItem.setMedicineId(medicine.getId());
+            if (planned.size() == 1 && outstanding == 0) {
+                prescriptionItem.setInventoryItemId(planned.get(0).getInventoryItemId());
+            }
+            prescriptionItem.setQuantity(item.getQuantity());
+            prescriptionItem.setDosageInstructions(item.getDosageInstructions());
+            prescriptionItem.setDaysSupply(item.getDaysSupply());
+            prescriptionItems.add(prescriptionItem);
+        }
+
+        List<StockShortageDTO> shortages = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : requestedByMedicine.entrySet()) {
+            int available = availableByMedicine.getOrDefault(entry.getKey(), 0);
+            if (entry.getValue() > available) {
+                String medicineName = template.getTemplateItems().stream()
+                        .map(PrescriptionTemplateItem::getMedicine)
+                        .filter(medicine -> medicine.getId().equals(entry.getKey()))
+                        .findFirst()
+                        .map(Medicine::getName)
+                        .orElse(null);
+                shortages.add(new StockShortageDTO(entry.getKey(), medicineName, entry.getValue(), available));
+            }
+        }
+
+        CreatePrescriptionDTO prescriptionDTO = new CreatePrescriptionDTO();
+        prescriptionDTO.setPatientId(request.getPatientId());
+        prescriptionDTO.setDiseaseId(request.getDiseaseId());
+        prescriptionDTO.setCustomDisease(request.getCustomDisease());
+        prescriptionDTO.setPrescriptionNotes(request.getPrescriptionNotes() != null
+                ? request.getPrescriptionNotes() : templateNotes(template));
+        prescriptionDTO.setItems(prescriptionItems);
+
+        TemplateApplicationDTO result = TemplateApplicationDTO.builder()
+                .items(resolvedItems)
+                .shortages(shortages)
+                .prescription(prescriptionDTO)
+                .build();
+
+        if (!request.isCreate()) {
+            return result;
+        }
+        if (!shortages.isEmpty()) {
+            log.info("Not issuing template {}: {} medicines are short", templateId, shortages.size());
+            return result;
+        }
+        if (request.getPatientId() == null) {
+            throw new BusinessLogicException("Patient ID is required to create a prescription from a template");
+        }
+
+        // submit by medicine so allocation is repeated against the rows as locked, not as previewed
+        CreatePrescriptionDTO submission = new CreatePrescriptionDTO(
+                prescriptionDTO.getPatientId(), prescriptionDTO.getDiseaseId(), prescriptionDTO.getCustomDisease(),
+                prescriptionDTO.getPrescriptionNotes(),
+                prescriptionItems.stream()
+                        .map(line -> new CreatePrescriptionItemDTO(null, line.getMedicineId(), line.getQuantity(),
+                                line.getDosageInstructions(), line.getDaysSupply()))
+                        .collect(Collectors.toList()));
+        result.setCreated(prescriptionService.createPrescription(submission));
+        log.info("Created prescription from template {} for patient {}", templateId, request.getPatientId());
+        return result;
+    }
+
+    private record PreviewBatch(Long id, String batchNumber, LocalDate expiryDate) {
+    }
+
+    private String templateNotes(PrescriptionTemplate template) {
         String notes = "";
         if (template.getConditionName() != null && !template.getConditionName().isEmpty()) {
             notes += "Condition: " + template.getConditionName() + "\n\n";
         }
         notes += template.getTemplateNotes() != null ? template.getTemplateNotes() : "";
-        prescriptionDTO.setPrescriptionNotes(notes);
-
-        return prescriptionDTO;
+        return notes;
     }
-}
\ No newline at end of file
+}
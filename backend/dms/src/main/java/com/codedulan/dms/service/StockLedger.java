@@ -0,0 +1,198 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.StockBalanceDTO;
+import com.codedulan.dms.dto.StockMovementDTO;
+import com.codedulan.dms.entity.InventoryItem;
+import com.codedulan.dms.entity.StockMovement;
+import com.codedulan.dms.entity.StockMovementType;
+import com.codedulan.dms.entity.StockSnapshot;
+import com.codedulan.dms.repository.InventoryRepository;
+import com.codedulan.dms.repository.StockMovementRepository;
+import com.codedulan.dms.repository.StockSnapshotRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+// Append-only history of stock movements per batch. Movements are held until the transaction that
+// caused them is about to commit, then stamped and written as batched inserts, so occurredAt is the
+// commit time however long the transaction ran. A nightly job writes off expired stock and snapshots
+// each medicine's balance, so a past balance is the nearest snapshot plus at most a day of movements.
+@Service
+@Transactional
+@RequiredArgsConstructor
+@Slf4j
+public class StockLedger {
+
+    static final LocalDateTime LEDGER_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+    // snapshots stop short of the job time so movements stamped just before it but still committing land in the next one
+    static final Duration SETTLE_MARGIN = Duration.ofMinutes(10);
+
+    private final StockMovementRepository movementRepository;
+    private final StockSnapshotRepository snapshotRepository;
+    private final InventoryRepository inventoryRepository;
+
+    public void record(Long inventoryItemId, Long medicineId, StockMovementType type, int quantity, String note) {
+        if (quantity == 0) {
+            return;
+        }
+        StockMovement movement = StockMovement.builder()
+                .inventoryItemId(inventoryItemId)
+                .medicineId(medicineId)
+                .type(type)
+                .quantity(quantity)
+                .note(note)
+                .build();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            movement.setOccurredAt(LocalDateTime.now());
+            movementRepository.save(movement);
+            return;
+        }
+        pendingMovements().add(movement);
+    }
+
+    // What the ledger holds for one batch, counting movements this transaction has yet to write
+    public long balanceOf(Long inventoryItemId) {
+        long pending = 0;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pending = pendingMovements().stream()
+                    .filter(movement -> movement.getInventoryItemId().equals(inventoryItemId))
+                    .mapToLong(StockMovement::getQuantity)
+                    .sum();
+        }
+        return movementRepository.sumForInventoryItem(inventoryItemId) + pending;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<StockMovement> pendingMovements() {
+        List<StockMovement> pending = (List<StockMovement>) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) {
+            return pending;
+        }
+        List<StockMovement> movements = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(this, movements);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                if (movements.isEmpty()) {
+                    return;
+                }
+                // flush the rest of the transaction first, so any row lock waits are over before the stamp
+                movementRepository.flush();
+                LocalDateTime committedAt = LocalDateTime.now();
+                movements.forEach(movement -> movement.setOccurredAt(committedAt));
+                movementRepository.saveAll(movements);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(StockLedger.this);
+            }
+        });
+        return movements;
+    }
+
+    @Transactional(readOnly = true)
+    public List<StockMovementDTO> getMovements(Long inventoryItemId) {
+        return movementRepository.findByInventoryItemIdOrderByOccurredAtAscIdAsc(inventoryItemId).stream()
+                .map(StockMovementDTO::fromEntity)
+                .collect(Collectors.toList());
+    }
+
+    @Transactional(readOnly = true)
+    public StockBalanceDTO getBalance(Long medicineId, LocalDateTime at) {
+        StockSnapshot snapshot = snapshotRepository
+                .findFirstByMedicineIdAndTakenAtLessThanEqualOrderByTakenAtDesc(medicineId, at)
+                .orElse(null);
+        LocalDateTime from = snapshot != null ? snapshot.getTakenAt() : LEDGER_START;
+        long balance = (snapshot != null ? snapshot.getBalance() : 0L)
+                + movementRepository.sumForMedicineBetween(medicineId, from, at);
+        return new StockBalanceDTO(medicineId, at, balance, snapshot != null ? snapshot.getTakenAt() : null);
+    }
+
+    // Stock that existed before the ledger gets one opening movement per batch on the first start
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void openLedgerIfEmpty() {
+        try {
+            if (movementRepository.existsByIdIsNotNull()) {
+                return;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            List<StockMovement> opening = new ArrayList<>();
+            for (InventoryItem batch : inventoryRepository.findByRemainingQuantityGreaterThanOrderByExpiryDateAsc(0)) {
+                if (batch.getExpiryDate().isBefore(now.toLocalDate())) {
+                    continue;
+                }
+                opening.add(StockMovement.builder()
+                        .inventoryItemId(batch.getId())
+                        .medicineId(batch.getMedicine().getId())
+                        .type(StockMovementType.ADJUST)
+                        .quantity(batch.getRemainingQuantity())
+                        .occurredAt(now)
+                        .note("Opening balance")
+                        .build());
+            }
+            movementRepository.saveAll(opening);
+            log.info("Opened stock ledger with {} batches", opening.size());
+        } catch (DataAccessException e) {
+            log.warn("Could not open the stock ledger at startup, it will be retried on the next start", e);
+        }
+    }
+
+    @Scheduled(cron = "0 15 0 * * ?")
+    public void closeDay() {
+        recordExpiries(LocalDate.now());
+        takeSnapshot(LocalDateTime.now().minus(SETTLE_MARGIN));
+    }
+
+    // Writes off whatever the ledger still holds for batches that have expired
+    void recordExpiries(LocalDate today) {
+        List<Object[]> expired = movementRepository.findExpiredBalances(today);
+        for (Object[] row : expired) {
+            record((Long) row[0], (Long) row[1], StockMovementType.EXPIRE, -((Number) row[2]).intValue(), "Batch expired");
+        }
+        log.info("Recorded expiry of {} batches", expired.size());
+    }
+
+    // Rolls the previous snapshot forward by the movements since, for every medicine at once
+    void takeSnapshot(LocalDateTime takenAt) {
+        LocalDateTime previous = snapshotRepository.findLatestTakenAt().orElse(LEDGER_START);
+        if (!takenAt.isAfter(previous)) {
+            return;
+        }
+
+        Map<Long, Long> balances = new TreeMap<>();
+        for (StockSnapshot snapshot : snapshotRepository.findByTakenAt(previous)) {
+            balances.put(snapshot.getMedicineId(), snapshot.getBalance());
+        }
+        for (Object[] row : movementRepository.sumByMedicineBetween(previous, takenAt)) {
+            balances.merge((Long) row[0], ((Number) row[1]).longValue(), Long::sum);
+        }
+
+        List<StockSnapshot> snapshots = new ArrayList<>(balances.size());
+        balances.forEach((medicineId, balance) -> snapshots.add(StockSnapshot.builder()
+                .medicineId(medicineId)
+                .takenAt(takenAt)
+                .balance(balance)
+                .build()));
+        snapshotRepository.saveAll(snapshots);
+        log.info("Took stock snapshot of {} medicines at {}", snapshots.size(), takenAt);
+    }
+}
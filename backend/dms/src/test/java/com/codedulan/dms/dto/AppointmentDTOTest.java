@@ -0,0 +1,74 @@
+package com.codedulan.dms.dto;
+
+import com.codedulan.dms.entity.Appointment;
+import com.codedulan.dms.entity.Patient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AppointmentDTOTest {
+
+    // a list row must stay small no matter how much is stored on the patient
+    private static final int MAX_ROW_BYTES = 400;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @Test
+    public void listRowDoesNotCarryPatientPayload() throws Exception {
+        Appointment appointment = appointmentWithHeavyPatient();
+
+        String entityJson = objectMapper.writeValueAsString(appointment);
+        String dtoJson = objectMapper.writeValueAsString(AppointmentDTO.fromEntity(appointment));
+
+        assertTrue(dtoJson.length() <= MAX_ROW_BYTES,
+                "Appointment list row grew to " + dtoJson.length() + " bytes");
+        assertTrue(dtoJson.length() * 10 < entityJson.length());
+
+        assertFalse(dtoJson.contains("password"));
+        assertFalse(dtoJson.contains("barcode"));
+        assertFalse(dtoJson.contains("medicalNotes"));
+        assertTrue(dtoJson.contains("\"firstName\":\"Nimal\""));
+    }
+
+    @Test
+    public void constructorExpressionMatchesFromEntity() {
+        Appointment appointment = appointmentWithHeavyPatient();
+
+        AppointmentDTO projected = new AppointmentDTO(appointment.getId(), appointment.getQueueNumber(),
+                appointment.getDate(), appointment.getTime(), appointment.getAppointmentType(),
+                appointment.getNotes(), appointment.getAppointmentStatus(),
+                appointment.getPatient().getPatientId(), appointment.getPatient().getFirstName(),
+                appointment.getPatient().getLastName());
+
+        assertEquals(AppointmentDTO.fromEntity(appointment), projected);
+    }
+
+    private Appointment appointmentWithHeavyPatient() {
+        Patient patient = Patient.builder()
+                .patientId(7L)
+                .firstName("Nimal")
+                .lastName("Perera")
+                .email("nimal@example.com")
+                .contact("0771234567")
+                .password("$2a$10$abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ01")
+                .barcode("iVBORw0KGgo".repeat(500))
+                .medicalNotes("Long term hypertension follow-up. ".repeat(25))
+                .build();
+
+        return Appointment.builder()
+                .id(42L)
+                .queueNumber(3)
+                .date(LocalDate.of(2025, 3, 14))
+                .time(LocalTime.of(9, 15))
+                .appointmentType("CHECKUP")
+                .notes("Bring reports")
+                .appointmentStatus("PENDING")
+                .patient(patient)
+                .build();
+    }
+}
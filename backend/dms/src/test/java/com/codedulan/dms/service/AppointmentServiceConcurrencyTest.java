@@ -0,0 +1,93 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.AppointmentRequest;
+import com.codedulan.dms.entity.Patient;
+import com.codedulan.dms.exception.BusinessLogicException;
+import com.codedulan.dms.repository.AppointmentRepository;
+import com.codedulan.dms.repository.PatientRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class AppointmentServiceConcurrencyTest {
+
+    private static final int THREADS = 300;
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    private Patient patient;
+    private LocalDate date;
+
+    @BeforeEach
+    void setUp() {
+        patient = patientRepository.save(Patient.builder()
+                .firstName("Concurrency")
+                .lastName("Test")
+                .contact("0771234567")
+                .email("concurrency-" + System.nanoTime() + "@test.local")
+                .password("password123")
+                .build());
+        // a date far enough out that no real booking can collide with it
+        date = LocalDate.now().plusYears(50).plusDays(System.nanoTime() % 365);
+    }
+
+    @AfterEach
+    void tearDown() {
+        appointmentRepository.deleteAll(appointmentRepository.findByDateOrderByTimeAsc(date));
+        patientRepository.delete(patient);
+    }
+
+    @Test
+    void concurrentBookingsForOneSlotHaveExactlyOneWinner() throws Exception {
+        AppointmentRequest request = new AppointmentRequest();
+        request.setDate(date);
+        request.setTime(LocalTime.of(10, 30));
+        request.setAppointmentType("CHECKUP");
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger winners = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        for (int i = 0; i < THREADS; i++) {
+            executor.submit(() -> {
+                start.await();
+                try {
+                    appointmentService.createAppointmentForPatient(patient.getPatientId(), request);
+                    winners.incrementAndGet();
+                } catch (BusinessLogicException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES));
+
+        assertEquals(1, winners.get());
+        assertEquals(THREADS - 1, rejected.get());
+        assertEquals(1, appointmentRepository.findByDateOrderByTimeAsc(date).size());
+    }
+}
@@ -0,0 +1,66 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.repository.AppointmentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AppointmentSlotCacheTest {
+
+    private static final LocalDate DATE = LocalDate.of(2030, 5, 6);
+    private static final LocalTime TIME = LocalTime.of(9, 30);
+
+    private final AppointmentRepository appointmentRepository = mock(AppointmentRepository.class);
+    private final AppointmentSlotCache slotCache = new AppointmentSlotCache(appointmentRepository);
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void bookingReachesADayLoadedBeforeItCommitted() {
+        when(appointmentRepository.findTimesByDate(DATE)).thenReturn(List.of());
+        TransactionSynchronizationManager.initSynchronization();
+
+        slotCache.markBooked(DATE, TIME);
+        // another request loads the day while the booking is still uncommitted
+        assertFalse(slotCache.isBooked(DATE, TIME));
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertTrue(slotCache.isBooked(DATE, TIME));
+    }
+
+    @Test
+    void rolledBackBookingLeavesTheSlotFree() {
+        when(appointmentRepository.findTimesByDate(DATE)).thenReturn(List.of());
+        assertFalse(slotCache.isBooked(DATE, TIME));
+        TransactionSynchronizationManager.initSynchronization();
+
+        slotCache.markBooked(DATE, TIME);
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertFalse(slotCache.isBooked(DATE, TIME));
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(status);
+        }
+    }
+}
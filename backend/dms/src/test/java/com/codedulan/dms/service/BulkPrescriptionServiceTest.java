@@ -0,0 +1,98 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.BulkPrescriptionRequest;
+import com.codedulan.dms.dto.BulkPrescriptionResultDTO;
+import com.codedulan.dms.dto.CreatePrescriptionDTO;
+import com.codedulan.dms.dto.CreatePrescriptionItemDTO;
+import com.codedulan.dms.entity.InventoryItem;
+import com.codedulan.dms.entity.Medicine;
+import com.codedulan.dms.entity.Patient;
+import com.codedulan.dms.entity.Prescription;
+import com.codedulan.dms.repository.DiseaseRepository;
+import com.codedulan.dms.repository.InventoryRepository;
+import com.codedulan.dms.repository.PatientRepository;
+import com.codedulan.dms.repository.PrescriptionBulkInsertRepository;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BulkPrescriptionServiceTest {
+
+    private final PatientRepository patientRepository = mock(PatientRepository.class);
+    private final InventoryRepository inventoryRepository = mock(InventoryRepository.class);
+    private final InventoryService inventoryService = mock(InventoryService.class);
+    private final PrescriptionBulkInsertRepository bulkInsertRepository = mock(PrescriptionBulkInsertRepository.class);
+    private final BulkPrescriptionService bulkPrescriptionService = new BulkPrescriptionService(patientRepository,
+            mock(DiseaseRepository.class), inventoryRepository, inventoryService, bulkInsertRepository,
+            new DosageParser(), new IdempotencyStore(TransactionOperations.withoutTransaction()),
+            Validation.buildDefaultValidatorFactory().getValidator());
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shortEntryTakesNothingAndLaterEntriesStillGetItsStock() {
+        Medicine amoxicillin = Medicine.builder().id(1L).name("Amoxicillin").build();
+        Medicine salbutamol = Medicine.builder().id(2L).name("Salbutamol").build();
+        InventoryItem earlier = batch(10L, amoxicillin, 10, 1);
+        InventoryItem later = batch(11L, amoxicillin, 15, 6);
+        InventoryItem inhalers = batch(20L, salbutamol, 3, 6);
+
+        when(patientRepository.findAllById(anyCollection()))
+                .thenReturn(List.of(Patient.builder().patientId(1L).firstName("Ann").lastName("Perera").build()));
+        when(inventoryRepository.findAllByIdForUpdate(anyCollection())).thenReturn(List.of(inhalers));
+        when(inventoryRepository.lockBatchesForAllocation(eq(1L), anyInt(), any(LocalDate.class)))
+                .thenReturn(List.of(later, earlier));
+        doAnswer(invocation -> {
+            InventoryItem batch = invocation.getArgument(0);
+            batch.setRemainingQuantity(batch.getRemainingQuantity() - (int) invocation.getArgument(1));
+            return null;
+        }).when(inventoryService).dispenseLocked(any(InventoryItem.class), anyInt());
+
+        // the middle entry would take 10 of the later batch, then finds only 3 of the 5 inhalers it names
+        BulkPrescriptionRequest request = new BulkPrescriptionRequest(List.of(
+                entry(byMedicine(1L, 10)),
+                entry(byMedicine(1L, 10), byBatch(20L, 5)),
+                entry(byMedicine(1L, 15))));
+
+        BulkPrescriptionResultDTO result = bulkPrescriptionService.createPrescriptions(request, null);
+
+        assertEquals(2, result.getSucceeded());
+        assertEquals(List.of(true, false, true),
+                result.getEntries().stream().map(BulkPrescriptionResultDTO.Entry::isSuccess).toList());
+        assertTrue(result.getEntries().get(1).getError().startsWith("Insufficient quantity available for Salbutamol"));
+
+        verify(inventoryService).dispenseLocked(earlier, 10);
+        verify(inventoryService).dispenseLocked(later, 15);
+        verifyNoMoreInteractions(inventoryService);
+        assertEquals(3, inhalers.getRemainingQuantity());
+
+        ArgumentCaptor<List<Prescription>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(bulkInsertRepository).insertPrescriptions(inserted.capture());
+        assertEquals(2, inserted.getValue().size());
+    }
+
+    private static InventoryItem batch(Long id, Medicine medicine, int remaining, int monthsToExpiry) {
+        return InventoryItem.builder().id(id).medicine(medicine).remainingQuantity(remaining)
+                .expiryDate(LocalDate.now().plusMonths(monthsToExpiry)).build();
+    }
+
+    private static CreatePrescriptionDTO entry(CreatePrescriptionItemDTO... items) {
+        return new CreatePrescriptionDTO(1L, null, null, null, List.of(items));
+    }
+
+    // one tablet a day, so the line total is the number of days
+    private static CreatePrescriptionItemDTO byMedicine(Long medicineId, int days) {
+        return new CreatePrescriptionItemDTO(null, medicineId, 1, "1 tab OD", days);
+    }
+
+    private static CreatePrescriptionItemDTO byBatch(Long inventoryItemId, int days) {
+        return new CreatePrescriptionItemDTO(inventoryItemId, null, 1, "1 tab OD", days);
+    }
+}
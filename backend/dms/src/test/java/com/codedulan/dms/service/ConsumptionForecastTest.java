@@ -0,0 +1,40 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.ReorderForecastDTO;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsumptionForecastTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+
+    @Test
+    void closedDaysAreSmoothedAndQuietDaysCountAsZero() {
+        ConsumptionForecast.Demand demand = new ConsumptionForecast.Demand();
+        demand.record(DAY, 10);
+        demand.record(DAY, 10);
+        demand.record(DAY.plusDays(1), 30);
+        // the open day does not count yet
+        assertEquals(20, demand.rate(DAY.plusDays(1)), 1e-9);
+        // 0.2 * 30 + 0.8 * 20, then one day without dispensing
+        assertEquals(22 * 0.8, demand.rate(DAY.plusDays(3)), 1e-9);
+    }
+
+    @Test
+    void reorderDateLeavesLeadTimeAndSafetyStock() {
+        // 10 a day: reorder point is 14 days of lead time plus 7 days of safety stock
+        ReorderForecastDTO forecast = ConsumptionForecast.forecast(1L, 500, 10, null, DAY);
+        assertEquals(210, forecast.getReorderPoint());
+        assertEquals(50.0, forecast.getDaysOfCover());
+        assertEquals(DAY.plusDays(29), forecast.getReorderDate());
+        assertFalse(forecast.isReorderNow());
+
+        ReorderForecastDTO idle = ConsumptionForecast.forecast(2L, 5, 0, 20, DAY);
+        assertNull(idle.getDaysOfCover());
+        assertEquals(DAY, idle.getReorderDate());
+        assertTrue(idle.isReorderNow());
+    }
+}
@@ -0,0 +1,87 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.entity.DosageSchedule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+// Compares the string-scanning calculation that PrescriptionService used to run on every create and
+// update with DosageParser, both cold (parsing every time) and through its cache.
+// Run with the benchmark profile, see pom.xml.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DosageParserBenchmark {
+
+    private static final String[] INSTRUCTIONS = {
+            "1 tab OD", "2 tabs BD after meals", "TDS x 5 days", "QDS", "10ml three times daily",
+            "1 tab nocte", "q6h PRN", "once daily for 2 weeks", "twice daily", "1 puff SOS"
+    };
+
+    private final DosageParser parser = new DosageParser();
+
+    @Benchmark
+    public void legacyContainsScan(Blackhole blackhole) {
+        for (String instruction : INSTRUCTIONS) {
+            blackhole.consume(legacyTotalQuantity(instruction, 1, 7));
+        }
+    }
+
+    @Benchmark
+    public void parserUncached(Blackhole blackhole) {
+        for (String instruction : INSTRUCTIONS) {
+            DosageSchedule schedule = parser.parseUncached(instruction);
+            blackhole.consume(parser.totalQuantity(schedule, 1, 7));
+        }
+    }
+
+    @Benchmark
+    public void parserCached(Blackhole blackhole) {
+        for (String instruction : INSTRUCTIONS) {
+            DosageSchedule schedule = parser.parse(instruction);
+            blackhole.consume(parser.totalQuantity(schedule, 1, 7));
+        }
+    }
+
+    // the method PrescriptionService used before the parser, kept verbatim as the baseline
+    private static int legacyTotalQuantity(String dosageInstructions, int quantityPerDose, int daysSupply) {
+        int dosesPerDay = 1;
+
+        if (dosageInstructions != null) {
+            String instruction = dosageInstructions.toUpperCase();
+
+            if (instruction.contains("OD") || instruction.contains("ONCE DAILY") ||
+                    instruction.contains("MANE") || instruction.contains("NOCTE")) {
+                dosesPerDay = 1;
+            } else if (instruction.contains("BD") || instruction.contains("TWICE DAILY")) {
+                dosesPerDay = 2;
+            } else if (instruction.contains("TDS") || instruction.contains("THREE TIMES DAILY")) {
+                dosesPerDay = 3;
+            } else if (instruction.contains("QDS") || instruction.contains("QID") ||
+                    instruction.contains("FOUR TIMES DAILY")) {
+                dosesPerDay = 4;
+            }
+        }
+
+        return quantityPerDose * dosesPerDay * daysSupply;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DosageParserBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,68 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.entity.DosageSchedule;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DosageParserTest {
+
+    private final DosageParser parser = new DosageParser();
+
+    private int total(String instructions, int quantityPerDose, Integer daysSupply) {
+        return parser.totalQuantity(parser.parse(instructions), quantityPerDose, daysSupply);
+    }
+
+    @Test
+    void standardAbbreviations() {
+        assertEquals(7, total("1 tab OD", 1, 7));
+        assertEquals(14, total("BD", 1, 7));
+        assertEquals(42, total("2 tabs TDS", 2, 7));
+        assertEquals(28, total("QID", 1, 7));
+        assertEquals(21, total("three times daily", 1, 7));
+    }
+
+    @Test
+    void abbreviationsMatchOnWholeWordsOnly() {
+        // the old contains("OD") check matched inside "FOOD" and counted this as once daily
+        assertEquals(14, total("1 tab BD with food", 1, 7));
+        assertEquals(7, total("Take with food", 1, 7));
+    }
+
+    @Test
+    void intervalsWeeklyAndAlternateDays() {
+        assertEquals(28, total("q6h", 1, 7));
+        assertEquals(14, total("every 12 hours", 1, 7));
+        assertEquals(2, total("weekly", 1, 10));
+        assertEquals(4, total("every other day", 1, 7));
+
+        DosageSchedule q36h = parser.parse("q36h");
+        assertEquals(2, q36h.getDosesPerPeriod());
+        assertEquals(3, q36h.getPeriodDays());
+    }
+
+    @Test
+    void asNeededStatAndTaper() {
+        DosageSchedule prn = parser.parse("1 tab TDS PRN");
+        assertTrue(prn.getAsNeeded());
+        assertEquals(3, prn.getDosesPerPeriod());
+
+        assertEquals(2, total("2 tabs STAT", 2, 5));
+        // 4 + 3 + 2 + 1 tablets, each step held for 2 days, whatever the days supply says
+        assertEquals(20, total("taper 4-3-2-1 every 2 days", 1, 30));
+    }
+
+    @Test
+    void durationInTextIsUsedWhenDaysSupplyIsMissing() {
+        assertEquals(28, total("BD for 2 weeks", 1, null));
+        assertEquals(15, total("TDS x5 days", 1, null));
+        assertEquals(6, total("TDS x5 days", 1, 2));
+    }
+
+    @Test
+    void parsedSchedulesAreNotShared() {
+        DosageSchedule first = parser.parse("BD");
+        first.setDosesPerPeriod(99);
+        assertEquals(2, parser.parse("BD").getDosesPerPeriod());
+    }
+}
@@ -0,0 +1,54 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.exception.BusinessLogicException;
+import com.codedulan.dms.exception.ResourceAlreadyExistsException;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyStoreTest {
+
+    private final IdempotencyStore store = new IdempotencyStore(TransactionOperations.withoutTransaction());
+
+    @Test
+    void retryWithSameKeyReplaysTheFirstResult() {
+        AtomicInteger runs = new AtomicInteger();
+
+        String first = store.execute("payment", "key-1", "request", () -> "result-" + runs.incrementAndGet());
+        String second = store.execute("payment", "key-1", "request", () -> "result-" + runs.incrementAndGet());
+
+        assertEquals("result-1", first);
+        assertEquals("result-1", second);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void sameKeyWithDifferentRequestIsRejected() {
+        store.execute("payment", "key-2", "request", () -> "result");
+
+        assertThrows(ResourceAlreadyExistsException.class,
+                () -> store.execute("payment", "key-2", "other request", () -> "result"));
+    }
+
+    @Test
+    void failedAttemptReleasesTheKey() {
+        assertThrows(BusinessLogicException.class, () -> store.execute("prescription", "key-3", "request", () -> {
+            throw new BusinessLogicException("Insufficient quantity");
+        }));
+
+        assertEquals("result", store.execute("prescription", "key-3", "request", () -> "result"));
+    }
+
+    @Test
+    void missingKeyAlwaysRuns() {
+        AtomicInteger runs = new AtomicInteger();
+
+        store.execute("payment", null, "request", runs::incrementAndGet);
+        store.execute("payment", null, "request", runs::incrementAndGet);
+
+        assertEquals(2, runs.get());
+    }
+}
@@ -0,0 +1,62 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.InventoryImportResultDTO;
+import com.codedulan.dms.entity.InventoryItem;
+import com.codedulan.dms.repository.InventoryBulkInsertRepository;
+import com.codedulan.dms.repository.MedicineRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class InventoryImportServiceTest {
+
+    private final MedicineRepository medicineRepository = mock(MedicineRepository.class);
+    private final InventoryBulkInsertRepository bulkInsertRepository = mock(InventoryBulkInsertRepository.class);
+    private final InventoryService inventoryService = mock(InventoryService.class);
+    private final InventoryImportService importService =
+            new InventoryImportService(medicineRepository, bulkInsertRepository, inventoryService);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void validRowsAreInsertedAndBadRowsReportedByLine() throws Exception {
+        when(medicineRepository.findAllIdsAndNames()).thenReturn(List.of(
+                new Object[]{1L, "Paracetamol 500mg"},
+                new Object[]{2L, "Amoxicillin, 250mg"}));
+        String expiry = LocalDate.now().plusYears(1).toString();
+        String csv = "medicine,batch_number,expiry_date,quantity,buy_price,sell_price\n"
+                + "paracetamol 500mg,B1," + expiry + ",100,1.50,2.00\n"
+                + "\"Amoxicillin, 250mg\",B2," + expiry + ",40,3,4\n"
+                + "2,B3," + expiry + ",10,3,4\n"
+                + "Aspirin,B4," + expiry + ",10,1,2\n"
+                + "1,B5,2020-01-01,10,1,2\n"
+                + "1,B6," + expiry + ",ten,1,2\n";
+
+        InventoryImportResultDTO result = importService.importDelivery(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(6, result.getRowsRead());
+        assertEquals(3, result.getImported());
+        assertEquals(3, result.getRejected());
+        assertEquals(List.of(5, 6, 7), result.getErrors().stream().map(InventoryImportResultDTO.RowError::getLine).toList());
+        assertEquals("Unknown medicine: Aspirin", result.getErrors().get(0).getMessage());
+
+        ArgumentCaptor<List<InventoryItem>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(bulkInsertRepository).insertItems(inserted.capture());
+        assertEquals(List.of(1L, 2L, 2L), inserted.getValue().stream().map(item -> item.getMedicine().getId()).toList());
+        verify(inventoryService).recordReceived(anyList());
+    }
+
+    @Test
+    void quotedFieldsKeepCommasAndEscapedQuotes() {
+        assertEquals(List.of("a", "b, c", "say \"hi\"", ""),
+                InventoryImportService.splitCsvLine("a,\"b, c\",\"say \"\"hi\"\"\","));
+    }
+}
@@ -0,0 +1,98 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.entity.InventoryItem;
+import com.codedulan.dms.entity.Medicine;
+import com.codedulan.dms.exception.BusinessLogicException;
+import com.codedulan.dms.repository.InventoryRepository;
+import com.codedulan.dms.repository.MedicineRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class InventoryServiceConcurrencyTest {
+
+    private static final int THREADS = 64;
+    private static final int REQUESTS = 1000;
+    private static final int INITIAL_STOCK = 500;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    private Medicine medicine;
+    private InventoryItem item;
+
+    @BeforeEach
+    void setUp() {
+        medicine = medicineRepository.save(Medicine.builder()
+                .name("Concurrency-" + System.nanoTime())
+                .build());
+        item = inventoryRepository.save(InventoryItem.builder()
+                .medicine(medicine)
+                .batchNumber("STRESS")
+                .expiryDate(LocalDate.now().plusYears(1))
+                .quantity(INITIAL_STOCK)
+                .remainingQuantity(INITIAL_STOCK)
+                .buyPrice(BigDecimal.ONE)
+                .sellPrice(BigDecimal.TEN)
+                .receivedDate(LocalDate.now())
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        inventoryRepository.deleteById(item.getId());
+        medicineRepository.delete(medicine);
+    }
+
+    @Test
+    void concurrentReductionsNeverOversellOrLoseUnits() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger unitsIssued = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        for (int i = 0; i < REQUESTS; i++) {
+            // mixed request sizes so the last units are contended by requests that cannot all fit
+            int quantity = 1 + i % 3;
+            executor.submit(() -> {
+                start.await();
+                try {
+                    inventoryService.reduceInventoryQuantity(item.getId(), quantity);
+                    unitsIssued.addAndGet(quantity);
+                } catch (BusinessLogicException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES));
+
+        int remaining = inventoryRepository.findById(item.getId()).orElseThrow().getRemainingQuantity();
+        assertTrue(remaining >= 0);
+        // every unit is either still in stock or was issued to a request that succeeded
+        assertEquals(INITIAL_STOCK, unitsIssued.get() + remaining);
+        assertTrue(rejected.get() > 0);
+    }
+}
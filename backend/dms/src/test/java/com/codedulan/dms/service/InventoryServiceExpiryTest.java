@@ -0,0 +1,61 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.UpdateInventoryItemDTO;
+import com.codedulan.dms.entity.InventoryItem;
+import com.codedulan.dms.entity.Medicine;
+import com.codedulan.dms.entity.StockMovementType;
+import com.codedulan.dms.repository.InventoryRepository;
+import com.codedulan.dms.repository.MedicineRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class InventoryServiceExpiryTest {
+
+    private final InventoryRepository inventoryRepository = mock(InventoryRepository.class);
+    private final StockLedger stockLedger = mock(StockLedger.class);
+    private final InventoryService inventoryService = new InventoryService(inventoryRepository,
+            mock(MedicineRepository.class), mock(MedicineStockLevels.class), mock(LowStockFlags.class),
+            stockLedger, mock(ConsumptionForecast.class));
+
+    private InventoryItem batch;
+
+    // 40 units in a batch that expired yesterday
+    @BeforeEach
+    void setUp() {
+        batch = InventoryItem.builder().id(10L).medicine(Medicine.builder().id(1L).name("Amoxicillin").build())
+                .expiryDate(LocalDate.now().minusDays(1)).quantity(40).remainingQuantity(40)
+                .buyPrice(BigDecimal.ONE).sellPrice(BigDecimal.TEN).receivedDate(LocalDate.now().minusYears(1))
+                .build();
+        when(inventoryRepository.findById(10L)).thenReturn(Optional.of(batch));
+        when(inventoryRepository.save(any(InventoryItem.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void extendingAWrittenOffBatchBringsItsStockBack() {
+        when(stockLedger.balanceOf(10L)).thenReturn(0L);
+
+        inventoryService.updateInventoryItem(10L, extendTo(LocalDate.now().plusMonths(6)));
+
+        verify(stockLedger).record(10L, 1L, StockMovementType.ADJUST, 40, "Expiry date extended");
+    }
+
+    @Test
+    void extendingBeforeTheWriteOffLeavesTheLedgerAsItIs() {
+        when(stockLedger.balanceOf(10L)).thenReturn(40L);
+
+        inventoryService.updateInventoryItem(10L, extendTo(LocalDate.now().plusMonths(6)));
+
+        verify(stockLedger).record(10L, 1L, StockMovementType.ADJUST, 0, "Expiry date extended");
+    }
+
+    private static UpdateInventoryItemDTO extendTo(LocalDate expiryDate) {
+        return new UpdateInventoryItemDTO(null, expiryDate, null, null, null);
+    }
+}
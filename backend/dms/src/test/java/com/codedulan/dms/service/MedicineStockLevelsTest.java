@@ -0,0 +1,97 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.StockLevelDTO;
+import com.codedulan.dms.entity.InventoryItem;
+import com.codedulan.dms.entity.Medicine;
+import com.codedulan.dms.repository.InventoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MedicineStockLevelsTest {
+
+    private static final Long MEDICINE_ID = 7L;
+
+    private final InventoryRepository inventoryRepository = mock(InventoryRepository.class);
+    private final MedicineStockLevels stockLevels = new MedicineStockLevels(inventoryRepository);
+
+    @BeforeEach
+    void setUp() {
+        LocalDate today = LocalDate.now();
+        when(inventoryRepository.findUnexpiredBatchLevels(any())).thenReturn(List.of(
+                new Object[]{1L, MEDICINE_ID, today.plusDays(10), 40},
+                new Object[]{2L, MEDICINE_ID, today.plusYears(1), 100}));
+        stockLevels.rebuild();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void rebuildSumsUnexpiredBatchesPerMedicine() {
+        assertEquals(new StockLevelDTO(MEDICINE_ID, 140, 0, 40), stockLevels.get(MEDICINE_ID));
+        assertEquals(new StockLevelDTO(99L, 0, 0, 0), stockLevels.get(99L));
+    }
+
+    @Test
+    void dispensedUnitsAreReservedUntilCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        stockLevels.dispensed(1L, 15);
+        assertEquals(new StockLevelDTO(MEDICINE_ID, 125, 15, 40), stockLevels.get(MEDICINE_ID));
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(new StockLevelDTO(MEDICINE_ID, 125, 0, 25), stockLevels.get(MEDICINE_ID));
+    }
+
+    @Test
+    void rollbackPutsReservedUnitsBack() {
+        TransactionSynchronizationManager.initSynchronization();
+        stockLevels.dispensed(2L, 30);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(new StockLevelDTO(MEDICINE_ID, 140, 0, 40), stockLevels.get(MEDICINE_ID));
+    }
+
+    @Test
+    void receivedStockCountsOnlyOnceCommitted() {
+        InventoryItem batch = InventoryItem.builder()
+                .id(3L)
+                .medicine(Medicine.builder().id(MEDICINE_ID).build())
+                .expiryDate(LocalDate.now().plusDays(5))
+                .quantity(20)
+                .remainingQuantity(20)
+                .build();
+
+        TransactionSynchronizationManager.initSynchronization();
+        stockLevels.received(batch, 20);
+        assertEquals(140, stockLevels.available(MEDICINE_ID));
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(new StockLevelDTO(MEDICINE_ID, 160, 0, 60), stockLevels.get(MEDICINE_ID));
+    }
+
+    private void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(status);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.PrescriptionDTO;
+import com.codedulan.dms.entity.InventoryItem;
+import com.codedulan.dms.entity.Medicine;
+import com.codedulan.dms.entity.Patient;
+import com.codedulan.dms.entity.Prescription;
+import com.codedulan.dms.entity.PrescriptionItem;
+import com.codedulan.dms.repository.InventoryRepository;
+import com.codedulan.dms.repository.MedicineRepository;
+import com.codedulan.dms.repository.PatientRepository;
+import com.codedulan.dms.repository.PrescriptionRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class PrescriptionServiceStatementCountTest {
+
+    private static final int ITEMS_PER_PRESCRIPTION = 3;
+
+    @Autowired
+    private PrescriptionService prescriptionService;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Patient patient;
+    private final List<Medicine> medicines = new ArrayList<>();
+    private final List<InventoryItem> batches = new ArrayList<>();
+    private final List<Prescription> prescriptions = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        patient = patientRepository.save(Patient.builder()
+                .firstName("Statement")
+                .lastName("Count")
+                .contact("0771234567")
+                .email("statements-" + System.nanoTime() + "@test.local")
+                .password("password123")
+                .build());
+
+        // separate medicines per item so every item would need its own lazy loads without the graph
+        for (int i = 0; i < ITEMS_PER_PRESCRIPTION; i++) {
+            Medicine medicine = medicineRepository.save(Medicine.builder()
+                    .name("Statements-" + i + "-" + System.nanoTime())
+                    .build());
+            medicines.add(medicine);
+            batches.add(inventoryRepository.save(InventoryItem.builder()
+                    .medicine(medicine)
+                    .batchNumber("COUNT")
+                    .expiryDate(LocalDate.now().plusYears(1))
+                    .quantity(1000)
+                    .remainingQuantity(1000)
+                    .buyPrice(BigDecimal.ONE)
+                    .sellPrice(BigDecimal.TEN)
+                    .receivedDate(LocalDate.now())
+                    .build()));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        prescriptionRepository.deleteAll(prescriptions);
+        inventoryRepository.deleteAll(batches);
+        medicineRepository.deleteAll(medicines);
+        patientRepository.delete(patient);
+    }
+
+    @Test
+    void dateRangeReadUsesTheSameStatementCountForAnyResultSize() {
+        // a date far enough out that no real prescription shares it
+        LocalDate small = LocalDate.now().plusYears(60).plusDays(System.nanoTime() % 365);
+        LocalDate large = small.plusDays(1);
+        issuePrescriptions(small, 1);
+        issuePrescriptions(large, 20);
+
+        long smallCount = countStatements(small, 1);
+        long largeCount = countStatements(large, 20);
+
+        assertEquals(1, smallCount);
+        assertEquals(smallCount, largeCount);
+    }
+
+    private void issuePrescriptions(LocalDate date, int count) {
+        for (int i = 0; i < count; i++) {
+            Prescription prescription = Prescription.builder()
+                    .patient(patient)
+                    .issueDate(date.atTime(10, 0).plusMinutes(i))
+                    .prescriptionItems(new ArrayList<>())
+                    .build();
+            for (InventoryItem batch : batches) {
+                prescription.getPrescriptionItems().add(PrescriptionItem.builder()
+                        .prescription(prescription)
+                        .inventoryItem(batch)
+                        .quantity(1)
+                        .dosageInstructions("BD")
+                        .daysSupply(5)
+                        .build());
+            }
+            prescriptions.add(prescriptionRepository.save(prescription));
+        }
+    }
+
+    private long countStatements(LocalDate date, int expectedPrescriptions) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<PrescriptionDTO> result = prescriptionService.getPrescriptionsByDateRange(date, date);
+
+        assertEquals(expectedPrescriptions, result.size());
+        result.forEach(dto -> assertEquals(ITEMS_PER_PRESCRIPTION, dto.getItems().size()));
+        return statistics.getPrepareStatementCount();
+    }
+}
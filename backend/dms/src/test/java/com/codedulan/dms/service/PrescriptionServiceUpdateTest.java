@@ -0,0 +1,105 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.UpdatePrescriptionDTO;
+import com.codedulan.dms.dto.UpdatePrescriptionItemDTO;
+import com.codedulan.dms.entity.InventoryItem;
+import com.codedulan.dms.entity.Medicine;
+import com.codedulan.dms.entity.Patient;
+import com.codedulan.dms.entity.Prescription;
+import com.codedulan.dms.entity.PrescriptionItem;
+import com.codedulan.dms.repository.DiseaseRepository;
+import com.codedulan.dms.repository.InventoryRepository;
+import com.codedulan.dms.repository.PatientRepository;
+import com.codedulan.dms.repository.PrescriptionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class PrescriptionServiceUpdateTest {
+
+    private final PrescriptionRepository prescriptionRepository = mock(PrescriptionRepository.class);
+    private final InventoryService inventoryService = mock(InventoryService.class);
+    private final DosageParser dosageParser = new DosageParser();
+    private final PrescriptionService prescriptionService = new PrescriptionService(prescriptionRepository,
+            mock(PatientRepository.class), mock(InventoryRepository.class), inventoryService, dosageParser,
+            mock(IdempotencyStore.class), mock(DiseaseRepository.class));
+
+    private Prescription prescription;
+    private PrescriptionItem earlierBatchItem;
+    private PrescriptionItem laterBatchItem;
+
+    // one line of 1 tab BD for 10 days (20 units) split 15/5 over two batches
+    @BeforeEach
+    void setUp() {
+        Medicine medicine = Medicine.builder().id(1L).name("Amoxicillin").build();
+        InventoryItem earlierBatch = InventoryItem.builder().id(10L).medicine(medicine)
+                .expiryDate(LocalDate.now().plusMonths(1)).remainingQuantity(0).build();
+        InventoryItem laterBatch = InventoryItem.builder().id(11L).medicine(medicine)
+                .expiryDate(LocalDate.now().plusMonths(6)).remainingQuantity(100).build();
+
+        prescription = Prescription.builder().id(1L).issueDate(LocalDateTime.now())
+                .patient(Patient.builder().patientId(1L).firstName("Ann").lastName("Perera").build())
+                .build();
+        prescription.setPrescriptionItems(new ArrayList<>());
+        earlierBatchItem = lineItem(100L, earlierBatch, 15);
+        laterBatchItem = lineItem(101L, laterBatch, 5);
+
+        when(prescriptionRepository.findById(1L)).thenReturn(Optional.of(prescription));
+        when(prescriptionRepository.save(any(Prescription.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void shorteningOneItemOfASplitLineReturnsOnlyWhatTheLineTook() {
+        // the whole line goes from 20 units to 10
+        prescriptionService.updatePrescription(1L, edit(laterBatchItem.getId(), 5));
+
+        verify(inventoryService).restoreInventoryQuantity(11L, 5);
+        verify(inventoryService).restoreInventoryQuantity(10L, 5);
+        verifyNoMoreInteractions(inventoryService);
+        assertEquals(List.of(earlierBatchItem), prescription.getPrescriptionItems());
+        assertEquals(10, earlierBatchItem.getDispensedQuantity());
+        assertEquals(5, earlierBatchItem.getDaysSupply());
+    }
+
+    @Test
+    void lengtheningASplitLineTakesTheDifferenceFromTheEditedBatch() {
+        // 20 units to 24
+        prescriptionService.updatePrescription(1L, edit(laterBatchItem.getId(), 12));
+
+        verify(inventoryService).reduceInventoryQuantity(11L, 4);
+        verifyNoMoreInteractions(inventoryService);
+        assertEquals(15, earlierBatchItem.getDispensedQuantity());
+        assertEquals(9, laterBatchItem.getDispensedQuantity());
+        assertTrue(prescription.getPrescriptionItems().stream().allMatch(item -> item.getDaysSupply() == 12));
+    }
+
+    private PrescriptionItem lineItem(Long id, InventoryItem batch, int dispensed) {
+        PrescriptionItem item = PrescriptionItem.builder()
+                .id(id)
+                .prescription(prescription)
+                .inventoryItem(batch)
+                .quantity(1)
+                .dosageInstructions("1 tab BD")
+                .daysSupply(10)
+                .dosageSchedule(dosageParser.parse("1 tab BD"))
+                .dispensedQuantity(dispensed)
+                .build();
+        prescription.getPrescriptionItems().add(item);
+        return item;
+    }
+
+    private static UpdatePrescriptionDTO edit(Long itemId, int daysSupply) {
+        UpdatePrescriptionItemDTO itemDTO = new UpdatePrescriptionItemDTO(itemId, 1, "1 tab BD", daysSupply,
+                null, null, null);
+        return new UpdatePrescriptionDTO(null, List.of(itemDTO), null);
+    }
+}
@@ -0,0 +1,135 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.ApplyTemplateRequest;
+import com.codedulan.dms.dto.CreatePrescriptionDTO;
+import com.codedulan.dms.dto.TemplateApplicationDTO;
+import com.codedulan.dms.entity.InventoryItem;
+import com.codedulan.dms.entity.Medicine;
+import com.codedulan.dms.entity.Patient;
+import com.codedulan.dms.entity.PrescriptionTemplate;
+import com.codedulan.dms.entity.PrescriptionTemplateItem;
+import com.codedulan.dms.repository.InventoryRepository;
+import com.codedulan.dms.repository.MedicineRepository;
+import com.codedulan.dms.repository.PatientRepository;
+import com.codedulan.dms.repository.PrescriptionRepository;
+import com.codedulan.dms.repository.PrescriptionTemplateRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+@SpringBootTest
+class PrescriptionTemplateServiceStockTest {
+
+    private static final int INITIAL_STOCK = 100;
+
+    @Autowired
+    private PrescriptionTemplateService templateService;
+
+    @SpyBean
+    private PrescriptionService prescriptionService;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private PrescriptionTemplateRepository templateRepository;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    private Patient patient;
+    private Medicine medicine;
+    private InventoryItem batch;
+    private PrescriptionTemplate template;
+    private Long createdPrescriptionId;
+
+    @BeforeEach
+    void setUp() {
+        patient = patientRepository.save(Patient.builder()
+                .firstName("Template")
+                .lastName("Stock")
+                .contact("0771234567")
+                .email("template-stock-" + System.nanoTime() + "@test.local")
+                .password("password123")
+                .build());
+        medicine = medicineRepository.save(Medicine.builder()
+                .name("TemplateStock-" + System.nanoTime())
+                .build());
+        batch = inventoryRepository.save(InventoryItem.builder()
+                .medicine(medicine)
+                .batchNumber("PREVIEW")
+                .expiryDate(LocalDate.now().plusYears(1))
+                .quantity(INITIAL_STOCK)
+                .remainingQuantity(INITIAL_STOCK)
+                .buyPrice(BigDecimal.ONE)
+                .sellPrice(BigDecimal.TEN)
+                .receivedDate(LocalDate.now())
+                .build());
+
+        template = PrescriptionTemplate.builder()
+                .templateName("TemplateStock-" + System.nanoTime())
+                .templateItems(new ArrayList<>())
+                .build();
+        // 1 tab BD for 5 days, 10 units
+        template.getTemplateItems().add(PrescriptionTemplateItem.builder()
+                .prescriptionTemplate(template)
+                .medicine(medicine)
+                .quantity(1)
+                .dosageInstructions("1 tab BD")
+                .daysSupply(5)
+                .build());
+        template = templateRepository.save(template);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (createdPrescriptionId != null) {
+            prescriptionRepository.deleteById(createdPrescriptionId);
+        }
+        templateRepository.delete(template);
+        inventoryRepository.deleteById(batch.getId());
+        medicineRepository.delete(medicine);
+        patientRepository.delete(patient);
+    }
+
+    @Test
+    void stockDispensedBetweenPreviewAndCreateIsNotOverwritten() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // another request takes 30 units and commits after the preview has read the batch
+        doAnswer(invocation -> {
+            executor.submit(() -> inventoryService.reduceInventoryQuantity(batch.getId(), 30)).get();
+            return invocation.callRealMethod();
+        }).when(prescriptionService).createPrescription(any(CreatePrescriptionDTO.class));
+
+        TemplateApplicationDTO result = templateService.applyTemplate(template.getId(),
+                new ApplyTemplateRequest(patient.getPatientId(), null, null, null, true));
+        executor.shutdown();
+
+        assertNotNull(result.getCreated());
+        createdPrescriptionId = result.getCreated().getId();
+        int remaining = inventoryRepository.findById(batch.getId()).orElseThrow().getRemainingQuantity();
+        assertEquals(INITIAL_STOCK - 30 - 10, remaining);
+    }
+}
@@ -0,0 +1,94 @@
+package com.codedulan.dms.service;
+
+import com.codedulan.dms.dto.StockBalanceDTO;
+import com.codedulan.dms.entity.StockMovement;
+import com.codedulan.dms.entity.StockMovementType;
+import com.codedulan.dms.entity.StockSnapshot;
+import com.codedulan.dms.repository.InventoryRepository;
+import com.codedulan.dms.repository.StockMovementRepository;
+import com.codedulan.dms.repository.StockSnapshotRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class StockLedgerTest {
+
+    private static final LocalDateTime MIDNIGHT = LocalDateTime.of(2024, 3, 1, 0, 0);
+
+    private final StockMovementRepository movementRepository = mock(StockMovementRepository.class);
+    private final StockSnapshotRepository snapshotRepository = mock(StockSnapshotRepository.class);
+    private final StockLedger ledger = new StockLedger(movementRepository, snapshotRepository, mock(InventoryRepository.class));
+
+    @Test
+    void balanceStartsFromTheNearestSnapshot() {
+        LocalDateTime at = MIDNIGHT.plusHours(15);
+        when(snapshotRepository.findFirstByMedicineIdAndTakenAtLessThanEqualOrderByTakenAtDesc(7L, at))
+                .thenReturn(Optional.of(StockSnapshot.builder().medicineId(7L).takenAt(MIDNIGHT).balance(120L).build()));
+        when(movementRepository.sumForMedicineBetween(7L, MIDNIGHT, at)).thenReturn(-35L);
+
+        assertEquals(new StockBalanceDTO(7L, at, 85, MIDNIGHT), ledger.getBalance(7L, at));
+    }
+
+    @Test
+    void balanceWithoutSnapshotReplaysFromTheStart() {
+        LocalDateTime at = MIDNIGHT.plusHours(15);
+        when(snapshotRepository.findFirstByMedicineIdAndTakenAtLessThanEqualOrderByTakenAtDesc(7L, at))
+                .thenReturn(Optional.empty());
+        when(movementRepository.sumForMedicineBetween(7L, StockLedger.LEDGER_START, at)).thenReturn(40L);
+
+        assertEquals(new StockBalanceDTO(7L, at, 40, null), ledger.getBalance(7L, at));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void snapshotRollsThePreviousOneForward() {
+        LocalDateTime previous = MIDNIGHT.minusDays(1);
+        when(snapshotRepository.findLatestTakenAt()).thenReturn(Optional.of(previous));
+        when(snapshotRepository.findByTakenAt(previous)).thenReturn(List.of(
+                StockSnapshot.builder().medicineId(1L).takenAt(previous).balance(100L).build(),
+                StockSnapshot.builder().medicineId(2L).takenAt(previous).balance(50L).build()));
+        when(movementRepository.sumByMedicineBetween(previous, MIDNIGHT)).thenReturn(List.of(
+                new Object[]{1L, -30L},
+                new Object[]{3L, 200L}));
+
+        ledger.takeSnapshot(MIDNIGHT);
+
+        ArgumentCaptor<List<StockSnapshot>> saved = ArgumentCaptor.forClass(List.class);
+        verify(snapshotRepository).saveAll(saved.capture());
+        assertEquals(List.of(70L, 50L, 200L), saved.getValue().stream().map(StockSnapshot::getBalance).toList());
+        assertTrue(saved.getValue().stream().allMatch(snapshot -> snapshot.getTakenAt().equals(MIDNIGHT)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void movementsAreStampedWhenTheTransactionCommits() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            ledger.record(10L, 1L, StockMovementType.DISPENSE, -5, null);
+            LocalDateTime recorded = LocalDateTime.now();
+            verify(movementRepository, never()).save(any());
+            verify(movementRepository, never()).saveAll(any());
+
+            TransactionSynchronizationUtils.triggerBeforeCommit(false);
+
+            ArgumentCaptor<List<StockMovement>> saved = ArgumentCaptor.forClass(List.class);
+            verify(movementRepository).saveAll(saved.capture());
+            assertEquals(1, saved.getValue().size());
+            assertFalse(saved.getValue().get(0).getOccurredAt().isBefore(recorded));
+        } finally {
+            TransactionSynchronizationUtils.invokeAfterCompletion(
+                    TransactionSynchronizationManager.getSynchronizations(), TransactionSynchronization.STATUS_COMMITTED);
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
@@ -23,11 +23,12 @@ import {
   TextField,
   Chip,
 } from "@mui/material";
-import React, { useState, useEffect } from "react";
+import React, { useState, useEffect, useRef } from "react";
 import { ColorModeContext, useMode, tokens } from "../../../../theme";
 import DispenserSidebar from "../Sidebar/DispenserSidebar";
 import Topbar from "./Topbar";
 import axios from "axios";
+import { createSubmitKeys, postIdempotent } from "../../../../services/idempotency";
 
 const PrescriptionView = () => {
   const [theme, colorMode] = useMode();
@@ -45,6 +46,7 @@ const PrescriptionView = () => {
   });
   const [filterOption, setFilterOption] = useState("all");
   const [filterDate, setFilterDate] = useState("");
+  const paymentSubmitKeys = useRef(createSubmitKeys());
 
   // New state variables
   const [doctorFee, setDoctorFee] = useState(300);
@@ -219,6 +221,9 @@ const PrescriptionView = () => {
   const calculateTotalQuantity = (item) => {
     if (!item) return 0;
 
+    // lines split across batches carry the units taken from each batch
+    if (item.dispensedQuantity) return item.dispensedQuantity;
+
     
     const quantityPerDose = parseInt(item.quantity) || 1;
 
@@ -307,9 +312,9 @@ const PrescriptionView = () => {
         notes: "Payment recorded by dispenser",
       };
 
-      await axios.post(`${API_BASE_URL}/payments`, paymentData, {
+      await postIdempotent(`${API_BASE_URL}/payments`, paymentData, {
         headers: { Authorization: `Bearer ${token}` },
-      });
+      }, paymentSubmitKeys.current);
 
       
       const updatedProcessed = new Set([
@@ -355,9 +360,9 @@ const PrescriptionView = () => {
         notes: "Prescription rejected by dispenser - no payment collected",
       };
 
-      await axios.post(`${API_BASE_URL}/payments`, paymentData, {
+      await postIdempotent(`${API_BASE_URL}/payments`, paymentData, {
         headers: { Authorization: `Bearer ${token}` },
-      });
+      }, paymentSubmitKeys.current);
 
       // Mark the prescription as processed
       const updatedProcessed = new Set([
@@ -34,6 +34,7 @@ import SaveIcon from "@mui/icons-material/Save";
 import DeleteIcon from "@mui/icons-material/Delete";
 import { useNavigate } from "react-router-dom";
 import axios from "axios";
+import { createSubmitKeys, postIdempotent } from "../../../../../services/idempotency";
 
 const QuickPrescription = () => {
   const [theme, colorMode] = useMode();
@@ -41,6 +42,7 @@ const QuickPrescription = () => {
   const navigate = useNavigate();
   const [isCollapsed, setIsCollapsed] = useState(false);
   const medicineRefs = useRef([]);
+  const prescriptionSubmitKeys = useRef(createSubmitKeys());
 
   // Form state
   const [diseases, setDiseases] = useState([]);
@@ -731,10 +733,11 @@ const QuickPrescription = () => {
     try {
       setSaving(true);
       const token = localStorage.getItem("token");
-      const response = await axios.post(
+      const response = await postIdempotent(
         `${API_BASE_URL}/prescriptions`,
         prescriptionData,
-        { headers: { Authorization: `Bearer ${token}` } }
+        { headers: { Authorization: `Bearer ${token}` } },
+        prescriptionSubmitKeys.current
       );
 
       showNotification("Prescription saved successfully!");
@@ -0,0 +1,50 @@
+import axios from 'axios';
+
+const MAX_ATTEMPTS = 3;
+
+// crypto.randomUUID is only available on https or localhost, so tablets on the clinic LAN fall back to getRandomValues
+const newKey = () => {
+  if (window.crypto && typeof window.crypto.randomUUID === 'function') {
+    return window.crypto.randomUUID();
+  }
+  const bytes = window.crypto.getRandomValues(new Uint8Array(16));
+  return Array.from(bytes, (b) => b.toString(16).padStart(2, '0')).join('');
+};
+
+// One Idempotency-Key per submit: sending the same payload again (a retry after a timeout, or a second tap)
+// reuses the key so the server hands back the first result; a different payload gets a fresh key.
+export const createSubmitKeys = () => {
+  let lastPayload = null;
+  let lastKey = null;
+  return {
+    keyFor(payload) {
+      const serialized = JSON.stringify(payload);
+      if (serialized !== lastPayload) {
+        lastPayload = serialized;
+        lastKey = newKey();
+      }
+      return lastKey;
+    },
+    // after a successful submit, so the next one counts as a new request
+    reset() {
+      lastPayload = null;
+      lastKey = null;
+    },
+  };
+};
+
+// POST with an Idempotency-Key, retried when the request never got a response
+export const postIdempotent = async (url, data, config, submitKeys) => {
+  const headers = { ...(config?.headers || {}), 'Idempotency-Key': submitKeys.keyFor(data) };
+  for (let attempt = 1; ; attempt++) {
+    try {
+      const response = await axios.post(url, data, { ...config, headers });
+      submitKeys.reset();
+      return response;
+    } catch (error) {
+      if (error.response || attempt >= MAX_ATTEMPTS) {
+        throw error;
+      }
+    }
+  }
+};